@@ -0,0 +1,92 @@
+package com.devebot.opflow.log4j.benchmarks;
+
+import com.devebot.opflow.log4j.appenders.RabbitMQAppender;
+import com.devebot.opflow.log4j.layouts.LogstashLayout;
+import com.rabbitmq.nostro.client.Connection;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole pipeline, from append to basicPublish, with concurrent
+ *  producers and the publishers blocking them when they fall behind, so
+ *  that the throughput is the sustained one. The broker is replaced by
+ *  in-memory channels.
+ *
+ * @author drupalex
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AppenderBenchmark {
+
+    @Param({"1", "2"})
+    public int publisherWorkers;
+
+    @Param({"1", "64"})
+    public int batchSize;
+
+    private RabbitMQAppender appender;
+
+    @Setup
+    public void setup() {
+        appender = new RabbitMQAppender() {
+            @Override
+            protected Connection newConnection() {
+                return NoopConnections.newConnection();
+            }
+        };
+        appender.setName("benchmark");
+        appender.setLayout(new LogstashLayout());
+        appender.setPublisherWorkers(publisherWorkers);
+        appender.setBatchSize(batchSize);
+        appender.setOverflowPolicy("BLOCK");
+        appender.activateOptions();
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        LoggingEvent event;
+
+        @Setup
+        public void setup() {
+            event = new LoggingEvent(Logger.class.getName(), Logger.getLogger(AppenderBenchmark.class), Level.INFO,
+                    "Request 42 served in 12 ms", null);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void appendThroughput(Producer producer) {
+        appender.doAppend(producer.event);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void appendLatency(Producer producer) {
+        appender.doAppend(producer.event);
+    }
+}
@@ -0,0 +1,81 @@
+package com.devebot.opflow.log4j.benchmarks;
+
+import com.devebot.opflow.log4j.layouts.AbstractJsonLayout;
+import com.devebot.opflow.log4j.layouts.LogstashLayout;
+import com.devebot.opflow.log4j.layouts.SimpleJsonLayout;
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import com.devebot.opflow.log4j.utils.JsonTool;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of one event by the JSON layouts, at each depth, with and
+ *  without a throwable and metadata
+ *
+ * @author drupalex
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+    private static final String METADATA = "{\"lane\":{\"version\":\"0.2.1\",\"instance\":\"01\",\"layer\":\"example\"},\"lang\":\"java\",\"tags\":[\"c-broker\"]}";
+
+    @Param({"logstash", "simple"})
+    public String layoutName;
+
+    @Param({"0", "1", "2", "3"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean withThrowable;
+
+    @Param({"false", "true"})
+    public boolean withMetadata;
+
+    private AbstractJsonLayout layout;
+    private LoggingEvent event;
+    private final BytesBuilder buffer = new BytesBuilder(8192);
+
+    @Setup
+    public void setup() {
+        layout = "simple".equals(layoutName) ? new SimpleJsonLayout() : new LogstashLayout();
+        layout.setDepth(depth);
+        if (withMetadata) {
+            layout.setMetadata(JsonTool.toJsonMap(METADATA));
+        }
+        Throwable t = withThrowable ? new IllegalStateException("Connection refused", new RuntimeException("cause")) : null;
+        event = new LoggingEvent(Logger.class.getName(), Logger.getLogger(LayoutBenchmark.class), Level.ERROR,
+                "Request 42 failed after 3 retries, giving up", t);
+        event.getThreadName();
+        event.getLocationInformation();
+    }
+
+    @Benchmark
+    public String formatString() {
+        return layout.format(event);
+    }
+
+    @Benchmark
+    public int formatBytes() {
+        buffer.reset();
+        layout.format(event, buffer);
+        return buffer.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.devebot.opflow.log4j.benchmarks;
+
+import com.rabbitmq.nostro.client.Channel;
+import com.rabbitmq.nostro.client.Connection;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-ins of the RabbitMQ client: the connection hands out
+ *  channels which are always open and drop what is published
+ *
+ * @author drupalex
+ */
+public final class NoopConnections {
+
+    private NoopConnections() {
+    }
+
+    public static Connection newConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new Handler(true));
+    }
+
+    private static Channel newChannel() {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                new Class<?>[] { Channel.class }, new Handler(false));
+    }
+
+    private static final class Handler implements InvocationHandler {
+        private final boolean connection;
+        private final AtomicLong seqNo = new AtomicLong(1);
+
+        Handler(boolean connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "createChannel":
+                    return newChannel();
+                case "isOpen":
+                    return true;
+                case "getNextPublishSeqNo":
+                    return seqNo.get();
+                case "basicPublish":
+                    seqNo.incrementAndGet();
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return connection ? "NoopConnection" : "NoopChannel";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) return false;
+            if (type == int.class) return 0;
+            if (type == long.class) return 0L;
+            if (type == double.class) return 0.0;
+            if (type == float.class) return 0.0f;
+            if (type == short.class) return (short) 0;
+            if (type == byte.class) return (byte) 0;
+            if (type == char.class) return '\0';
+            return null;
+        }
+    }
+}
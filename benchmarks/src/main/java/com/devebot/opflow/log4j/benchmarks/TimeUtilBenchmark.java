@@ -0,0 +1,44 @@
+package com.devebot.opflow.log4j.benchmarks;
+
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import com.devebot.opflow.log4j.utils.TimeUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ISO-8601 formatting of the current time by concurrent threads
+ *
+ * @author drupalex
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TimeUtilBenchmark {
+
+    private final BytesBuilder buffer = new BytesBuilder(64);
+
+    @Benchmark
+    public String toISO8601UTC() {
+        return TimeUtil.toISO8601UTC(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public int writeISO8601UTC() {
+        buffer.reset();
+        TimeUtil.writeISO8601UTC(System.currentTimeMillis(), buffer);
+        return buffer.size();
+    }
+}
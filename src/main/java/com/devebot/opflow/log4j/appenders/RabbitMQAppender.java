@@ -1,32 +1,112 @@
 package com.devebot.opflow.log4j.appenders;
 
+import com.devebot.opflow.log4j.helpers.Aggregator;
+import com.devebot.opflow.log4j.helpers.AppenderMetrics;
+import com.devebot.opflow.log4j.helpers.ConfirmTracker;
+import com.devebot.opflow.log4j.helpers.DiskSpool;
+import com.devebot.opflow.log4j.helpers.Envelope;
+import com.devebot.opflow.log4j.helpers.EventSnapshot;
+import com.devebot.opflow.log4j.helpers.MessageProperties;
 import com.devebot.opflow.log4j.helpers.OptionUpdater;
+import com.devebot.opflow.log4j.helpers.OverflowPolicy;
+import com.devebot.opflow.log4j.helpers.PayloadCodec;
+import com.devebot.opflow.log4j.helpers.RateLimiter;
+import com.devebot.opflow.log4j.helpers.RingBuffer;
+import com.devebot.opflow.log4j.helpers.RoutingPlan;
 import com.devebot.opflow.log4j.layouts.AbstractJsonLayout;
+import com.devebot.opflow.log4j.layouts.ByteLayout;
+import com.devebot.opflow.log4j.utils.BytesBuilder;
 import com.devebot.opflow.log4j.utils.JsonTool;
-import com.rabbitmq.nostro.client.AMQP;
 import com.rabbitmq.nostro.client.Channel;
 import com.rabbitmq.nostro.client.Connection;
 import com.rabbitmq.nostro.client.ConnectionFactory;
+import com.rabbitmq.nostro.client.Recoverable;
+import com.rabbitmq.nostro.client.RecoveryListener;
 
 import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.ErrorCode;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class RabbitMQAppender extends AppenderSkeleton {
     
     private final ConnectionFactory factory = new ConnectionFactory();
     private volatile Connection connection = null;
     private volatile Channel channel = null;
-    private volatile ExecutorService threadPool = null;
+    private final Object connectionLock = new Object();
+    private volatile Publisher[] publishers = null;
+    private final Object publishersLock = new Object();
+    private volatile RingBuffer<EventSnapshot> snapshots = null;
+    private volatile DiskSpool spool = null;
+    private volatile ScheduledExecutorService housekeeper = null;
+    private volatile RateLimiter rateLimiter = null;
+    private volatile Aggregator aggregator = null;
+    private volatile RoutingPlan routingPlan = null;
+    private volatile MessageProperties messageProperties = null;
+    private volatile long reconnectAt = 0;
+    private volatile boolean connected = true;
+    private volatile boolean shutdown = false;
+    private volatile ObjectName metricsName = null;
+    private volatile Thread shutdownHook = null;
+    private final AtomicBoolean closing = new AtomicBoolean(false);
+    private final AppenderMetrics metrics = new AppenderMetrics(new AppenderMetrics.Probe() {
+        @Override
+        public int getBufferOccupancy() {
+            final Publisher[] _publishers = publishers;
+            int occupancy = 0;
+            if (_publishers != null) {
+                for (Publisher _publisher : _publishers) {
+                    occupancy += _publisher.occupancy();
+                }
+            }
+            return occupancy;
+        }
+
+        @Override
+        public int getBufferCapacity() {
+            final Publisher[] _publishers = publishers;
+            int capacity = 0;
+            if (_publishers != null) {
+                for (Publisher _publisher : _publishers) {
+                    capacity += _publisher.capacity();
+                }
+            }
+            return capacity;
+        }
+    });
+    private final RecoveryListener recoveryListener = new RecoveryListener() {
+        @Override
+        public void handleRecovery(Recoverable recoverable) {
+            metrics.markReconnect();
+        }
+
+        @Override
+        public void handleRecoveryStarted(Recoverable recoverable) {
+        }
+    };
 
+    private Boolean lockFreeAppend = true;
     private Boolean activated = true;
     private Boolean enabled = true;
     private int depth = 0;
@@ -48,9 +128,44 @@ public class RabbitMQAppender extends AppenderSkeleton {
     private long queueMaxLengthBytes = 0;
     private long queueMessageTtl = 0;
     private long messageExpiration = 0;
+    private Boolean correlationIdEnabled = true;
     private String routingKey = "";
+    private String routingBindings = null;
     private Map<String, Object> metadata;
 
+    private int bufferSize = 8192;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_BELOW_LEVEL;
+    private Level overflowLevel = Level.WARN;
+    private Level priorityLevel = Level.ERROR;
+    private int priorityBufferSize = 1024;
+    private int priorityWeight = 8;
+    private int batchSize = 1;
+    private long batchLinger = 0;
+    private int publisherWorkers = 1;
+    private Boolean workerConnections = false;
+    private String shardingKey = "thread";
+    private Boolean shardOrdering = true;
+    private Boolean confirmEnabled = false;
+    private int confirmWindow = 1024;
+    private long confirmTimeout = 30000;
+    private int confirmRetries = 3;
+    private String spoolDirectory = null;
+    private int spoolSegmentSize = 16 * 1024 * 1024;
+    private long spoolMaxSize = 256L * 1024 * 1024;
+    private int spoolReplayRate = 1000;
+    private String compression = null;
+    private int compressionThreshold = 1024;
+    private Boolean batchFraming = false;
+    private String loggerRateLimits = null;
+    private String levelRateLimits = null;
+    private String samplingRatios = null;
+    private long suppressionReportInterval = 60000;
+    private long aggregationWindow = 0;
+    private int aggregationCapacity = 1024;
+    private Boolean jmxEnabled = true;
+    private long closeTimeout = 10000;
+    private Boolean shutdownHookEnabled = false;
+
     private Boolean automaticRecoveryEnabled = true;
     private Boolean topologyRecoveryEnabled = true;
     private int networkRecoveryInterval = 0;
@@ -59,6 +174,12 @@ public class RabbitMQAppender extends AppenderSkeleton {
     private int shutdownTimeout = 0;
     private int heartbeatTimeout = 0;
     private int frameSizeLimit = 0;
+    private Boolean asyncConnect = false;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long REPLAY_INTERVAL = 100;
+    private static final long DEFAULT_RECONNECT_DELAY = 5000;
+    private static final String BATCH_CONTENT_TYPE = "application/vnd.opflow.batch";
 
     private final OptionUpdater optionUpdater;
     private static RabbitMQAppender instance;
@@ -85,29 +206,52 @@ public class RabbitMQAppender extends AppenderSkeleton {
         optionUpdater.activateOptions();
         
         if (!this.isEnabled()) return;
-        
-        try {
-            this.getConnection();
-        } catch (IOException | TimeoutException ioe) {
-            errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
-        }
 
         try {
-            this.getChannel();
-        } catch (IOException | TimeoutException ioe) {
-            errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
+            PayloadCodec codec = PayloadCodec.forName(compression);
+            if (codec != null) {
+                codec.close();
+            }
+        } catch (IllegalArgumentException iae) {
+            errorHandler.error(iae.getMessage(), iae, ErrorCode.GENERIC_FAILURE);
+            compression = null;
         }
+
+        this.initRoutingPlan();
+        messageProperties = null;
+        this.getMessageProperties();
+        this.initRateLimiter();
+        this.initAggregator();
         
-        try {
-            this.assertExchange();
-        } catch (IOException | TimeoutException ioe) {
-            errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
-        }
+        this.openSpool();
 
-        try {
-            this.assertQueue();
-        } catch (IOException | TimeoutException ioe) {
-            errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
+        connected = !asyncConnect;
+        if (asyncConnect) {
+            this.scheduleConnector(0);
+        } else {
+            try {
+                this.getConnection();
+            } catch (IOException | TimeoutException ioe) {
+                errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
+            }
+
+            try {
+                this.getChannel();
+            } catch (IOException | TimeoutException ioe) {
+                errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
+            }
+
+            try {
+                this.assertExchange();
+            } catch (IOException | TimeoutException ioe) {
+                errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
+            }
+
+            try {
+                this.assertQueue();
+            } catch (IOException | TimeoutException ioe) {
+                errorHandler.error(ioe.getMessage(), ioe, ErrorCode.GENERIC_FAILURE);
+            }
         }
         
         if (layout instanceof AbstractJsonLayout) {
@@ -119,6 +263,9 @@ public class RabbitMQAppender extends AppenderSkeleton {
                 errorHandler.error(jse.getMessage(), jse, ErrorCode.GENERIC_FAILURE);
             }
         }
+
+        this.registerMetrics();
+        this.addShutdownHook();
     }
 
     /**
@@ -131,8 +278,47 @@ public class RabbitMQAppender extends AppenderSkeleton {
         return true;
     }
 
+    /**
+     * Performs the checks of AppenderSkeleton#doAppend (closed state,
+     *  threshold and filter chain) without holding the appender monitor,
+     *  because the publishing itself is handed over to the worker threads.
+     * 
+     * @param loggingEvent the logging event object
+     */
+    @Override
+    public void doAppend(LoggingEvent loggingEvent) {
+        if (!lockFreeAppend) {
+            super.doAppend(loggingEvent);
+            return;
+        }
+        if (shutdown) {
+            LogLog.error("Attempted to append to closed appender named [" + name + "].");
+            return;
+        }
+        if (!isAsSevereAsThreshold(loggingEvent.getLevel())) {
+            metrics.markFiltered();
+            return;
+        }
+        Filter filter = getFirstFilter();
+        FILTER_LOOP:
+        while (filter != null) {
+            switch (filter.decide(loggingEvent)) {
+                case Filter.DENY:
+                    metrics.markFiltered();
+                    return;
+                case Filter.ACCEPT:
+                    break FILTER_LOOP;
+                case Filter.NEUTRAL:
+                default:
+                    filter = filter.getNext();
+            }
+        }
+        append(loggingEvent);
+    }
+
     /**
      * Submits LoggingEvent for publishing if it reaches severity threshold.
+     *  Only a snapshot of the event is handed over to the publisher thread.
      * 
      * @param loggingEvent the logging event object
      */
@@ -140,42 +326,694 @@ public class RabbitMQAppender extends AppenderSkeleton {
     protected void append(LoggingEvent loggingEvent) {
         if (this.isActivated() && this.isEnabled()) {
             if (isAsSevereAsThreshold(loggingEvent.getLevel())) {
-                getThreadPoolExecutor().submit(new LoggingTask(loggingEvent));
+                metrics.markAppended();
+                final RateLimiter _rateLimiter = rateLimiter;
+                if (_rateLimiter != null && !_rateLimiter.permit(loggingEvent.getLoggerName(), loggingEvent.getLevel())) {
+                    metrics.markFiltered();
+                    return;
+                }
+                final EventSnapshot snapshot = capture(loggingEvent);
+                final Aggregator _aggregator = aggregator;
+                if (_aggregator != null && _aggregator.fold(snapshot)) {
+                    metrics.markAggregated();
+                    release(snapshot);
+                    return;
+                }
+                dispatch(snapshot);
+            } else {
+                metrics.markFiltered();
+            }
+        }
+    }
+
+    /**
+     * Copies the event into a snapshot taken from the pool, on the caller
+     *  thread, or into a new one when the pool is empty
+     */
+    private EventSnapshot capture(LoggingEvent loggingEvent) {
+        final RingBuffer<EventSnapshot> _snapshots = getSnapshots();
+        EventSnapshot snapshot = (_snapshots != null) ? _snapshots.poll() : null;
+        if (snapshot == null) {
+            snapshot = new EventSnapshot();
+        }
+        return snapshot.capture(loggingEvent, (layout instanceof ByteLayout) && ((ByteLayout) layout).requiresLocation());
+    }
+
+    /**
+     * Returns a snapshot which has been encoded or dropped to the pool
+     */
+    private void release(EventSnapshot snapshot) {
+        snapshot.clear();
+        final RingBuffer<EventSnapshot> _snapshots = snapshots;
+        if (_snapshots != null) {
+            _snapshots.offer(snapshot);
+        }
+    }
+
+    /**
+     * Moves an event that cannot be handed over to a worker to the disk
+     *  spool if it is enabled, drops it otherwise
+     */
+    private boolean discard(EventSnapshot event) {
+        try {
+            if (spool != null) {
+                return spill(toEnvelope(event, new BytesBuilder(), null, null));
+            }
+        } catch (RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.WRITE_FAILURE);
+        } finally {
+            release(event);
+        }
+        metrics.markDropped();
+        return false;
+    }
+
+    /**
+     * @return RingBuffer the pool of snapshots, null once the appender is
+     *  closed
+     */
+    private RingBuffer<EventSnapshot> getSnapshots() {
+        RingBuffer<EventSnapshot> _snapshots = snapshots;
+        if (_snapshots == null) {
+            synchronized (this) {
+                _snapshots = snapshots;
+                if (_snapshots == null && !shutdown) {
+                    snapshots = _snapshots = new RingBuffer<>(bufferSize);
+                }
+            }
+        }
+        return _snapshots;
+    }
+
+    /**
+     * Selects the publisher worker of an event by hashing its thread or its
+     *  logger. Unless the per-shard ordering is required, an event whose
+     *  worker is full may be taken over by another one.
+     * 
+     * @param snapshot the captured event fields
+     */
+    private void dispatch(EventSnapshot snapshot) {
+        snapshot.setEnqueueTime(System.nanoTime());
+        final Publisher[] _publishers = getPublishers();
+        if (_publishers == null) {
+            discard(snapshot);
+            return;
+        }
+        final int count = _publishers.length;
+        if (count == 1) {
+            _publishers[0].enqueue(snapshot);
+            return;
+        }
+        int hash = "logger".equalsIgnoreCase(shardingKey) ? snapshot.getLoggerName().hashCode()
+                : (int) Thread.currentThread().getId();
+        int shard = ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % count;
+        if (!shardOrdering) {
+            for (int i = 0; i < count; i++) {
+                if (_publishers[(shard + i) % count].offer(snapshot)) {
+                    return;
+                }
             }
         }
+        _publishers[shard].enqueue(snapshot);
     }
 
     /**
-     * Simple Callable class that publishes messages to RabbitMQ server
+     * Publisher worker that drains its own ring buffers and publishes messages
+     *  to the RabbitMQ Server through its own channel. The events at or above
+     *  priorityLevel go through a separate lane, drained first, so that they
+     *  do not wait behind a backlog of less severe ones.
      */
-    class LoggingTask implements Callable<LoggingEvent> {
+    class Publisher implements Runnable {
+
+        private static final long IDLE_PARK_NANOS = 100L * 1000 * 1000;
+        private static final long BLOCK_PARK_NANOS = 100L * 1000;
+        private static final long STOP_GRACE_MILLIS = 100;
+
+        private final RingBuffer<EventSnapshot> buffer;
+        private final RingBuffer<EventSnapshot> urgent;
+        private final RingBuffer<Envelope> replays;
+        private final EventSnapshot[] batch;
+        private final Envelope[] envelopes;
+        private final long[] enqueueTimes;
+        private final BytesBuilder scratch = new BytesBuilder(4096);
+        private final BytesBuilder packed;
+        private final PayloadCodec codec;
+        private final ConfirmTracker tracker;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean waiting = false;
+        private volatile boolean idle = false;
+        private volatile Channel channel = null;
+        private volatile Connection ownConnection = null;
+        private int urgentStreak = 0;
+
+        Publisher(int index, int capacity, int batchSize) {
+            this.buffer = new RingBuffer<>(capacity);
+            this.urgent = (priorityLevel != Level.OFF && priorityBufferSize > 0) ? new RingBuffer<EventSnapshot>(priorityBufferSize) : null;
+            this.replays = new RingBuffer<>(Math.max(64, batchSize));
+            this.batch = new EventSnapshot[Math.max(1, batchSize)];
+            this.envelopes = new Envelope[batch.length];
+            this.enqueueTimes = new long[batch.length];
+            this.tracker = confirmEnabled ? new ConfirmTracker(confirmWindow, confirmRetries, metrics) : null;
+            this.codec = PayloadCodec.forName(compression);
+            this.packed = (codec != null) ? new BytesBuilder(4096) : null;
+            this.thread = new Thread(this, "opflow-log4j-amqp-" + getName() + "-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        /**
+         * Hands over the event to the publisher thread, applying the overflow
+         *  policy when the buffer is full
+         * 
+         * @param event the captured event fields
+         * @return boolean false if the event has been dropped
+         */
+        boolean enqueue(EventSnapshot event) {
+            if (!running) {
+                return discard(event);
+            }
+            boolean accepted;
+            if (isUrgent(event)) {
+                accepted = pushUrgent(event) || push(event) || handleUrgentOverflow(event);
+            } else {
+                accepted = push(event) || handleOverflow(event);
+            }
+            if (accepted && waiting) {
+                LockSupport.unpark(thread);
+            }
+            return accepted;
+        }
+
+        /**
+         * Hands over the event to the publisher thread only if the buffer has
+         *  a free slot
+         * 
+         * @param event the captured event fields
+         * @return boolean false if the buffer is full
+         */
+        boolean offer(EventSnapshot event) {
+            if (isUrgent(event) ? pushUrgent(event) : push(event)) {
+                if (waiting) {
+                    LockSupport.unpark(thread);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean push(EventSnapshot event) {
+            if (buffer.offer(event)) {
+                metrics.markEnqueued();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isUrgent(EventSnapshot event) {
+            return urgent != null && event.getLevel().isGreaterOrEqual(priorityLevel);
+        }
+
+        private boolean pushUrgent(EventSnapshot event) {
+            if (urgent.offer(event)) {
+                metrics.markEnqueued();
+                return true;
+            }
+            return false;
+        }
 
-        LoggingEvent loggingEvent;
+        /**
+         * Makes room for a severe event when both lanes are full, by evicting
+         *  the oldest events of the regular lane whatever the overflow policy
+         */
+        private boolean handleUrgentOverflow(EventSnapshot event) {
+            while (running) {
+                EventSnapshot oldest = buffer.poll();
+                if (oldest != null) {
+                    discard(oldest);
+                } else {
+                    LockSupport.unpark(thread);
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                }
+                if (pushUrgent(event) || push(event)) {
+                    return true;
+                }
+            }
+            return discard(event);
+        }
 
-        LoggingTask(LoggingEvent loggingEvent) {
-            this.loggingEvent = loggingEvent;
+        private boolean handleOverflow(EventSnapshot event) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    return discard(event);
+                case DROP_OLDEST:
+                    do {
+                        EventSnapshot oldest = buffer.poll();
+                        if (oldest != null) {
+                            discard(oldest);
+                        }
+                    } while (!push(event));
+                    return true;
+                case DROP_BELOW_LEVEL:
+                    if (!event.getLevel().isGreaterOrEqual(overflowLevel)) {
+                        return discard(event);
+                    }
+                    // the severe events wait for a free slot
+                case BLOCK:
+                default:
+                    while (running) {
+                        LockSupport.unpark(thread);
+                        LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                        if (push(event)) {
+                            return true;
+                        }
+                    }
+                    return discard(event);
+            }
         }
 
         /**
-         * Method is called by the ExecutorService and publishes the message to 
-         *  the RabbitMQ Server
+         * Moves a batch of spooled envelopes to the publisher thread, as long
+         *  as it has room for them
          * 
-         * @return LoggingEvent the current logging event object
-         * @throws Exception
+         * @param source the disk spool
+         * @param quota the maximum number of envelopes to be moved
+         * @throws IOException
          */
+        void replay(DiskSpool source, int quota) throws IOException {
+            for (int i = 0; i < quota && replays.size() < replays.capacity(); i++) {
+                Envelope envelope = source.poll();
+                if (envelope == null) {
+                    break;
+                }
+                replays.offer(envelope);
+            }
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
         @Override
-        public LoggingEvent call() throws Exception {
-            AMQP.BasicProperties.Builder b = new AMQP.BasicProperties().builder()
-                    .appId(identifier)
-                    .correlationId(String.format("%s:%s", identifier, System.currentTimeMillis()))
-                    .type(loggingEvent.getLevel().toString())
-                    .contentType("text/json");
-            if (messageExpiration > 0) {
-                b.expiration(String.valueOf(messageExpiration));
+        public void run() {
+            if (!awaitConnected()) {
+                return;
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                resend();
+                int count = collect();
+                if (count > 0) {
+                    publish(count);
+                    continue;
+                }
+                if (!running) {
+                    break;
+                }
+                idle = true;
+                await(IDLE_PARK_NANOS);
+                idle = false;
+            }
+        }
+
+        /**
+         * Keeps the events buffered until the background connector has opened
+         *  the connection and declared the topology
+         * 
+         * @return boolean false if the worker has been stopped meanwhile, the
+         *  buffered events being then evicted by terminate
+         */
+        private boolean awaitConnected() {
+            while (!connected) {
+                if (!running || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            return true;
+        }
+
+        void wake() {
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Drains up to batchSize events, waiting at most batchLinger milliseconds
+         *  after the first one for the batch to fill up
+         * 
+         * @return int the number of collected events
+         */
+        private int collect() {
+            int count = 0;
+            long deadline = 0;
+            boolean severe = false;
+            while (count < batch.length && !Thread.currentThread().isInterrupted()) {
+                EventSnapshot event = next();
+                if (event != null) {
+                    batch[count++] = event;
+                    if (count == 1) {
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchLinger);
+                    }
+                    severe |= isUrgent(event);
+                    continue;
+                }
+                // a severe event is not held back for the batch to fill up
+                if (count == 0 || batchLinger <= 0 || !running || severe) {
+                    break;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                await(remaining);
+            }
+            return count;
+        }
+
+        /**
+         * Polls the severe events first, but takes a regular one after
+         *  priorityWeight severe ones in a row, so that a flood of severe
+         *  events does not starve the regular lane. Once stopped, all of the
+         *  severe events are taken first.
+         * 
+         * @return EventSnapshot the next event or null if both lanes are empty
+         */
+        private EventSnapshot next() {
+            if (urgent != null && (urgentStreak < Math.max(1, priorityWeight) || !running)) {
+                EventSnapshot event = urgent.poll();
+                if (event != null) {
+                    urgentStreak++;
+                    return event;
+                }
+            }
+            urgentStreak = 0;
+            EventSnapshot event = buffer.poll();
+            if (event == null && urgent != null) {
+                event = urgent.poll();
+            }
+            return event;
+        }
+
+        int occupancy() {
+            return buffer.size() + ((urgent != null) ? urgent.size() : 0);
+        }
+
+        int capacity() {
+            return buffer.capacity() + ((urgent != null) ? urgent.capacity() : 0);
+        }
+
+        private void await(long nanos) {
+            waiting = true;
+            if (buffer.isEmpty() && (urgent == null || urgent.isEmpty()) && running) {
+                LockSupport.parkNanos(this, nanos);
+            }
+            waiting = false;
+        }
+
+        /**
+         * Encodes the collected events, then publishes the whole burst
+         *  back-to-back to the RabbitMQ Server
+         * 
+         * @param count the number of collected events
+         */
+        private void publish(int count) {
+            if (batchFraming && count > 1) {
+                publishFramed(count);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                final EventSnapshot snapshot = batch[i];
+                batch[i] = null;
+                enqueueTimes[i] = snapshot.getEnqueueTime();
+                try {
+                    envelopes[i] = toEnvelope(snapshot, scratch, codec, packed);
+                } catch (RuntimeException e) {
+                    metrics.markFailed();
+                    errorHandler.error(e.getMessage(), e, ErrorCode.WRITE_FAILURE);
+                } finally {
+                    release(snapshot);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (envelopes[i] != null) {
+                    if (send(envelopes[i])) {
+                        metrics.recordPublishLatency(System.nanoTime() - enqueueTimes[i]);
+                    }
+                    envelopes[i] = null;
+                }
+            }
+        }
+
+        /**
+         * Encodes the collected events into framed messages, one per routing
+         *  key: the number of records, then each payload preceded by its
+         *  length, all of them as big-endian ints. The whole frame is
+         *  compressed at once and its type is the level of the most severe
+         *  event.
+         * 
+         * @param count the number of collected events
+         */
+        private void publishFramed(int count) {
+            for (int first = 0; first < count; first++) {
+                if (batch[first] == null) {
+                    continue;
+                }
+                final String key = routeOf(batch[first]);
+                scratch.reset();
+                scratch.writeInt(0);
+                int framed = 0;
+                Level level = null;
+                for (int i = first; i < count; i++) {
+                    final EventSnapshot snapshot = batch[i];
+                    if (snapshot == null || (i > first && !key.equals(routeOf(snapshot)))) {
+                        continue;
+                    }
+                    batch[i] = null;
+                    final int mark = scratch.size();
+                    try {
+                        scratch.writeInt(0);
+                        final long started = System.nanoTime();
+                        encode(snapshot, scratch);
+                        metrics.recordEncodeTime(System.nanoTime() - started);
+                        scratch.setInt(mark, scratch.size() - mark - 4);
+                        if (level == null || snapshot.getLevel().isGreaterOrEqual(level)) {
+                            level = snapshot.getLevel();
+                        }
+                        enqueueTimes[framed++] = snapshot.getEnqueueTime();
+                    } catch (RuntimeException e) {
+                        scratch.truncate(mark);
+                        metrics.markFailed();
+                        errorHandler.error(e.getMessage(), e, ErrorCode.WRITE_FAILURE);
+                    } finally {
+                        release(snapshot);
+                    }
+                }
+                if (framed > 0) {
+                    scratch.setInt(0, framed);
+                    if (send(seal(key, level, true, scratch, codec, packed))) {
+                        final long now = System.nanoTime();
+                        for (int i = 0; i < framed; i++) {
+                            metrics.recordPublishLatency(now - enqueueTimes[i]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Publishes again the messages which have been nacked or left
+         *  unconfirmed by a closed channel, then the ones replayed from the
+         *  disk spool
+         */
+        private void resend() {
+            Envelope envelope;
+            if (tracker != null) {
+                while ((envelope = tracker.pollRetry()) != null) {
+                    send(envelope);
+                }
+            }
+            while ((envelope = replays.poll()) != null) {
+                send(envelope);
             }
-            String message = layout.format(loggingEvent);
-            getChannel().basicPublish(exchangeName, routingKey, b.build(), message.getBytes());
-            return loggingEvent;
+        }
+
+        /**
+         * Publishes an envelope, or moves it to the disk spool while the
+         *  broker is unreachable
+         * 
+         * @return boolean true if the message has been written to the channel
+         */
+        private boolean send(Envelope envelope) {
+            if (spool != null && System.currentTimeMillis() < reconnectAt) {
+                spill(envelope);
+                return false;
+            }
+            long seqNo = -1;
+            try {
+                final Channel _channel = getWorkerChannel();
+                if (tracker != null) {
+                    seqNo = _channel.getNextPublishSeqNo();
+                    tracker.register(seqNo, envelope, confirmTimeout);
+                }
+                _channel.basicPublish(exchangeName, envelope.getRoutingKey(), envelope.getProperties(), envelope.getBody());
+                metrics.markPublished();
+                return true;
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                if (spool != null) {
+                    reconnectAt = System.currentTimeMillis() + getReconnectDelay();
+                    if (tracker != null && seqNo >= 0) {
+                        tracker.forget(seqNo);
+                    }
+                    if (spill(envelope)) {
+                        return false;
+                    }
+                }
+                metrics.markFailed();
+                errorHandler.error(e.getMessage(), e, ErrorCode.WRITE_FAILURE);
+            } catch (InterruptedException ie) {
+                // interrupted by close while waiting for the confirm window
+                spill(envelope);
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        /**
+         * Creates the channel of this worker, on its own connection if enabled
+         * 
+         * @return Channel the activated channel object
+         * @throws IOException
+         */
+        private Channel getWorkerChannel() throws IOException, TimeoutException {
+            if (channel == null || !channel.isOpen()) {
+                final Connection _connection;
+                if (workerConnections) {
+                    if (ownConnection == null || !ownConnection.isOpen()) {
+                        synchronized (connectionLock) {
+                            ownConnection = openConnection(ownConnection);
+                        }
+                    }
+                    _connection = ownConnection;
+                } else {
+                    _connection = getConnection();
+                }
+                final Channel _channel = _connection.createChannel();
+                if (tracker != null) {
+                    _channel.confirmSelect();
+                    _channel.addConfirmListener(tracker);
+                }
+                channel = _channel;
+            }
+            return channel;
+        }
+
+        /**
+         * Waits for the buffered events to be published and, in confirm mode,
+         *  to be confirmed by the broker
+         *
+         * @param deadline the System#nanoTime at which to give up
+         * @return boolean true if nothing was left to publish before the deadline
+         */
+        boolean awaitDrained(long deadline) {
+            while (!isDrained()) {
+                if (!thread.isAlive() || Thread.currentThread().isInterrupted()
+                        || System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+            return true;
+        }
+
+        private boolean isDrained() {
+            // the worker clears the idle flag before polling the lanes
+            return occupancy() == 0 && replays.isEmpty() && idle && (tracker == null || tracker.getInFlight() == 0);
+        }
+
+        /**
+         * Stops accepting events, the worker publishes the buffered ones and
+         *  then exits
+         */
+        void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Waits until the deadline for the stopped worker to publish the buffered
+         *  events, then moves the remaining ones to the disk spool, the severe
+         *  events first, or drops them, and closes the channel
+         *
+         * @param deadline the System#nanoTime at which to give up
+         * @return int the number of events and messages left unpublished
+         */
+        int terminate(long deadline) {
+            int abandoned = 0;
+            try {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0) {
+                    thread.join(remaining);
+                }
+                if (thread.isAlive()) {
+                    // missed the deadline, the interrupted worker leaves its loop
+                    thread.interrupt();
+                    thread.join(STOP_GRACE_MILLIS);
+                }
+                // the lanes are only taken once the worker has exited or timed out
+                abandoned = evict();
+                remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (tracker != null && !tracker.awaitConfirms(Math.max(0, remaining))) {
+                    errorHandler.error("Unconfirmed messages: " + tracker.getInFlight(), null, ErrorCode.CLOSE_FAILURE);
+                }
+            } catch (InterruptedException ie) {
+                thread.interrupt();
+                abandoned += evict();
+                Thread.currentThread().interrupt();
+            }
+            if (codec != null && !thread.isAlive()) {
+                codec.close();
+            }
+            if (channel != null && channel.isOpen()) {
+                try {
+                    channel.close();
+                } catch (IOException | TimeoutException ioe) {
+                    errorHandler.error(ioe.getMessage(), ioe, ErrorCode.CLOSE_FAILURE);
+                }
+            }
+            if (ownConnection != null && ownConnection.isOpen()) {
+                try {
+                    ownConnection.close();
+                } catch (IOException ioe) {
+                    errorHandler.error(ioe.getMessage(), ioe, ErrorCode.CLOSE_FAILURE);
+                }
+            }
+            return abandoned;
+        }
+
+        /**
+         * Takes the buffered events and messages away from a worker which has
+         *  exited or missed the deadline, and spills them or drops them
+         *
+         * @return int the number of events and messages taken
+         */
+        private int evict() {
+            int count = 0;
+            EventSnapshot event;
+            while (urgent != null && (event = urgent.poll()) != null) {
+                discard(event);
+                count++;
+            }
+            while ((event = buffer.poll()) != null) {
+                discard(event);
+                count++;
+            }
+            Envelope envelope;
+            while ((envelope = replays.poll()) != null) {
+                spill(envelope);
+                count++;
+            }
+            return count;
         }
     }
     
@@ -183,6 +1021,20 @@ public class RabbitMQAppender extends AppenderSkeleton {
      * The getters & setters corresponding to appender configuration properties
      */
 
+    public boolean isLockFreeAppend() {
+        return lockFreeAppend;
+    }
+
+    /**
+     * Appends without synchronizing on the appender (default), otherwise
+     *  through the synchronized AppenderSkeleton#doAppend
+     * 
+     * @param lockFreeAppend enabled if true
+     */
+    public void setLockFreeAppend(boolean lockFreeAppend) {
+        this.lockFreeAppend = lockFreeAppend;
+    }
+
     public boolean isActivated() {
         return activated;
     }
@@ -371,12 +1223,48 @@ public class RabbitMQAppender extends AppenderSkeleton {
         this.messageExpiration = messageExpiration;
     }
 
-    public String getRoutingKey() {
-        return routingKey;
+    public boolean isCorrelationIdEnabled() {
+        return correlationIdEnabled;
     }
 
-    public void setRoutingKey(String routingKey) {
-        this.routingKey = routingKey;
+    /**
+     * Gives each message a correlation id made of the identifier, the
+     *  activation time and a counter (default), otherwise all the messages
+     *  of a level share the same properties
+     * 
+     * @param correlationIdEnabled enabled if true
+     */
+    public void setCorrelationIdEnabled(boolean correlationIdEnabled) {
+        this.correlationIdEnabled = correlationIdEnabled;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Sets the routing key of the messages, a template which may refer to
+     *  ${level}, ${logger} and ${identifier}
+     * 
+     * @param routingKey e.g. ${level}.${logger}
+     */
+    public void setRoutingKey(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    public String getRoutingBindings() {
+        return routingBindings;
+    }
+
+    /**
+     * Binds the queue with each of these comma-separated keys instead of the
+     *  routing key, e.g. ERROR.#,FATAL.# on a topic exchange. Required for a
+     *  templated routing key on any other exchange type.
+     * 
+     * @param routingBindings the binding keys
+     */
+    public void setRoutingBindings(String routingBindings) {
+        this.routingBindings = routingBindings;
     }
     
     public String getMetadata() {
@@ -385,6 +1273,374 @@ public class RabbitMQAppender extends AppenderSkeleton {
 
     public void setMetadata(String metadataString) {
         this.metadata = JsonTool.toJsonMap(metadataString);
+        if (layout instanceof AbstractJsonLayout) {
+            ((AbstractJsonLayout) layout).setMetadata(metadata);
+        }
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Selects the codec of the message bodies: "none" (default), "gzip",
+     *  "deflate" or "lz4", sent as the "x-lz4-block" content encoding (a
+     *  raw LZ4 block prefixed with its original length, not an LZ4 frame)
+     * 
+     * @param compression the name of the codec
+     */
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Leaves the message bodies smaller than this number of bytes uncompressed
+     * 
+     * @param compressionThreshold the minimum size
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public boolean isBatchFraming() {
+        return batchFraming;
+    }
+
+    /**
+     * Publishes each batch of events as a single framed message, of the
+     *  application/vnd.opflow.batch content type (the records having the
+     *  content type of the layout)
+     * 
+     * @param batchFraming enabled if true
+     */
+    public void setBatchFraming(boolean batchFraming) {
+        this.batchFraming = batchFraming;
+    }
+
+    public String getLoggerRateLimits() {
+        return loggerRateLimits;
+    }
+
+    /**
+     * Limits the events of each logger, in events per second, by the rate
+     *  of its closest configured ancestor ("*" for all the loggers)
+     * 
+     * @param loggerRateLimits e.g. {"com.example.dao": 100, "*": 1000}
+     */
+    public void setLoggerRateLimits(String loggerRateLimits) {
+        this.loggerRateLimits = loggerRateLimits;
+    }
+
+    public String getLevelRateLimits() {
+        return levelRateLimits;
+    }
+
+    /**
+     * Limits the events of each level, in events per second
+     * 
+     * @param levelRateLimits e.g. {"INFO": 5000}
+     */
+    public void setLevelRateLimits(String levelRateLimits) {
+        this.levelRateLimits = levelRateLimits;
+    }
+
+    public String getSamplingRatios() {
+        return samplingRatios;
+    }
+
+    /**
+     * Publishes only a random fraction of the events of each level
+     * 
+     * @param samplingRatios e.g. {"DEBUG": 0.1, "TRACE": 0.01}
+     */
+    public void setSamplingRatios(String samplingRatios) {
+        this.samplingRatios = samplingRatios;
+    }
+
+    public long getSuppressionReportInterval() {
+        return suppressionReportInterval;
+    }
+
+    /**
+     * Sets how often the summary of the suppressed events is published
+     *  (0 disables it)
+     * 
+     * @param suppressionReportInterval the interval in milliseconds
+     */
+    public void setSuppressionReportInterval(long suppressionReportInterval) {
+        this.suppressionReportInterval = suppressionReportInterval;
+    }
+
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    /**
+     * Folds the repeats of an event (same logger, level, message and
+     *  throwable class) within this window into a single summary event
+     *  (0 disables the aggregation)
+     * 
+     * @param aggregationWindow the length of the window in milliseconds
+     */
+    public void setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
+
+    public int getAggregationCapacity() {
+        return aggregationCapacity;
+    }
+
+    /**
+     * Sets the number of distinct events which may be aggregated at once
+     * 
+     * @param aggregationCapacity the size of the table
+     */
+    public void setAggregationCapacity(int aggregationCapacity) {
+        this.aggregationCapacity = aggregationCapacity;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy.name();
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = OverflowPolicy.parse(overflowPolicy, this.overflowPolicy);
+    }
+
+    public String getOverflowLevel() {
+        return overflowLevel.toString();
+    }
+
+    public void setOverflowLevel(String overflowLevel) {
+        this.overflowLevel = Level.toLevel(overflowLevel, this.overflowLevel);
+    }
+
+    public String getPriorityLevel() {
+        return priorityLevel.toString();
+    }
+
+    /**
+     * Sends the events at or above this level through a separate lane of
+     *  each worker, drained before the regular one: they may overtake less
+     *  severe events of the same thread (OFF disables the lane)
+     * 
+     * @param priorityLevel the level, ERROR by default
+     */
+    public void setPriorityLevel(String priorityLevel) {
+        this.priorityLevel = Level.toLevel(priorityLevel, this.priorityLevel);
+    }
+
+    public int getPriorityBufferSize() {
+        return priorityBufferSize;
+    }
+
+    /**
+     * Sets the capacity of the lane of the severe events. When it is full,
+     *  they go to the regular lane, and then evict its oldest events.
+     * 
+     * @param priorityBufferSize the number of events
+     */
+    public void setPriorityBufferSize(int priorityBufferSize) {
+        this.priorityBufferSize = priorityBufferSize;
+    }
+
+    public int getPriorityWeight() {
+        return priorityWeight;
+    }
+
+    /**
+     * Sets how many severe events are taken in a row before a regular one
+     * 
+     * @param priorityWeight the number of events
+     */
+    public void setPriorityWeight(int priorityWeight) {
+        this.priorityWeight = priorityWeight;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchLinger() {
+        return batchLinger;
+    }
+
+    public void setBatchLinger(long batchLinger) {
+        this.batchLinger = batchLinger;
+    }
+
+    public int getPublisherWorkers() {
+        return publisherWorkers;
+    }
+
+    public void setPublisherWorkers(int publisherWorkers) {
+        this.publisherWorkers = publisherWorkers;
+    }
+
+    public boolean isWorkerConnections() {
+        return workerConnections;
+    }
+
+    public void setWorkerConnections(boolean workerConnections) {
+        this.workerConnections = workerConnections;
+    }
+
+    public String getShardingKey() {
+        return shardingKey;
+    }
+
+    public void setShardingKey(String shardingKey) {
+        this.shardingKey = shardingKey;
+    }
+
+    public boolean isShardOrdering() {
+        return shardOrdering;
+    }
+
+    public void setShardOrdering(boolean shardOrdering) {
+        this.shardOrdering = shardOrdering;
+    }
+
+    public boolean isConfirmEnabled() {
+        return confirmEnabled;
+    }
+
+    public void setConfirmEnabled(boolean confirmEnabled) {
+        this.confirmEnabled = confirmEnabled;
+    }
+
+    public int getConfirmWindow() {
+        return confirmWindow;
+    }
+
+    public void setConfirmWindow(int confirmWindow) {
+        this.confirmWindow = confirmWindow;
+    }
+
+    public long getConfirmTimeout() {
+        return confirmTimeout;
+    }
+
+    /**
+     * Waits that long for a free slot of the confirm window, then publishes
+     *  again the messages in flight: the delivery is at-least-once, a message
+     *  which the broker confirms late is delivered twice
+     * 
+     * @param confirmTimeout the timeout in milliseconds
+     */
+    public void setConfirmTimeout(long confirmTimeout) {
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    public int getConfirmRetries() {
+        return confirmRetries;
+    }
+
+    public void setConfirmRetries(int confirmRetries) {
+        this.confirmRetries = confirmRetries;
+    }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    public int getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+
+    public void setSpoolSegmentSize(int spoolSegmentSize) {
+        this.spoolSegmentSize = spoolSegmentSize;
+    }
+
+    public long getSpoolMaxSize() {
+        return spoolMaxSize;
+    }
+
+    public void setSpoolMaxSize(long spoolMaxSize) {
+        this.spoolMaxSize = spoolMaxSize;
+    }
+
+    public int getSpoolReplayRate() {
+        return spoolReplayRate;
+    }
+
+    public void setSpoolReplayRate(int spoolReplayRate) {
+        this.spoolReplayRate = spoolReplayRate;
+    }
+
+    public long getDroppedCount() {
+        return metrics.getDroppedCount();
+    }
+
+    /**
+     * @return AppenderMetrics the counters and latencies of the appender,
+     *  also registered as an MBean if jmxEnabled is set
+     */
+    public AppenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Registers the metrics of the appender in the platform MBean server,
+     *  as com.devebot.opflow.log4j:type=RabbitMQAppender,name="[name]"
+     * 
+     * @param jmxEnabled enabled if true (default)
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    public long getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    /**
+     * Sets the overall time given to close to publish the buffered events,
+     *  the severe ones first. The events left then are moved to the disk
+     *  spool if it is enabled, dropped otherwise.
+     * 
+     * @param closeTimeout the deadline in milliseconds, 10000 by default
+     */
+    public void setCloseTimeout(long closeTimeout) {
+        this.closeTimeout = closeTimeout;
+    }
+
+    public boolean isShutdownHookEnabled() {
+        return shutdownHookEnabled;
+    }
+
+    /**
+     * Closes the appender from a JVM shutdown hook, for the applications
+     *  which do not call LogManager#shutdown
+     * 
+     * @param shutdownHookEnabled enabled if true
+     */
+    public void setShutdownHookEnabled(boolean shutdownHookEnabled) {
+        this.shutdownHookEnabled = shutdownHookEnabled;
     }
 
     public boolean isAutomaticRecoveryEnabled() {
@@ -459,6 +1715,21 @@ public class RabbitMQAppender extends AppenderSkeleton {
         this.frameSizeLimit = frameSizeLimit;
     }
 
+    public boolean isAsyncConnect() {
+        return asyncConnect;
+    }
+
+    /**
+     * Opens the connection and declares the exchange and the queue in the
+     *  background, so that activateOptions does not wait for the broker. The
+     *  events are buffered by the workers until the channel is ready.
+     * 
+     * @param asyncConnect enabled if true
+     */
+    public void setAsyncConnect(boolean asyncConnect) {
+        this.asyncConnect = asyncConnect;
+    }
+
     public int getRequestedFrameMax() {
         return frameSizeLimit;
     }
@@ -498,12 +1769,14 @@ public class RabbitMQAppender extends AppenderSkeleton {
         final Channel _channel = getChannel();
         synchronized (_channel) {
             _channel.queueDeclare(queueName, queueDurable, queueExclusive, queueAutoDelete, args);
-            _channel.queueBind(queueName, exchangeName, routingKey);
+            for (String bindingKey : getBindingKeys()) {
+                _channel.queueBind(queueName, exchangeName, bindingKey);
+            }
         }
     }
 
     /**
-     * Creates a single channel to RabbitMQ server
+     * Creates a single channel to RabbitMQ server, used to declare the topology
      * @return Channel the activated channel object
      * @throws IOException
      */
@@ -520,10 +1793,44 @@ public class RabbitMQAppender extends AppenderSkeleton {
      * @throws IOException
      */
     private Connection getConnection() throws IOException, TimeoutException {
-        if (this.connection == null || !this.connection.isOpen()) {
-            this.connection = initConnectionFactory().newConnection();
+        synchronized (connectionLock) {
+            if (this.connection == null || !this.connection.isOpen()) {
+                this.connection = openConnection(this.connection);
+            }
+            return this.connection;
+        }
+    }
+
+    /**
+     * Opens a connection in place of a missing or closed one, counting the
+     *  reconnections, including the automatic recoveries of the client
+     * 
+     * @param previous the connection being replaced, null for the first one
+     * @return Connection the opened connection object
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    private Connection openConnection(Connection previous) throws IOException, TimeoutException {
+        if (previous != null) {
+            metrics.markReconnect();
         }
-        return this.connection;
+        final Connection _connection = newConnection();
+        if (_connection instanceof Recoverable) {
+            ((Recoverable) _connection).addRecoveryListener(recoveryListener);
+        }
+        return _connection;
+    }
+
+    /**
+     * Opens a new connection to the RabbitMQ Server. This is the only access
+     *  to the network, so that a stand-in transport may be plugged in.
+     * 
+     * @return Connection the opened connection object
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    protected Connection newConnection() throws IOException, TimeoutException {
+        return initConnectionFactory().newConnection();
     }
 
     /**
@@ -561,29 +1868,529 @@ public class RabbitMQAppender extends AppenderSkeleton {
         return factory;
     }
 
-    private ExecutorService getThreadPoolExecutor() {
-        if (threadPool == null) {
-            threadPool = Executors.newSingleThreadExecutor();
+    /**
+     * Encodes a captured event into a message ready to be published
+     * 
+     * @param snapshot the captured event fields
+     * @param scratch the reusable buffer of the calling thread
+     * @param codec the compression codec of the calling thread, may be null
+     * @param packed the reusable buffer of the codec
+     * @return Envelope the message
+     */
+    private Envelope toEnvelope(EventSnapshot snapshot, BytesBuilder scratch, PayloadCodec codec, BytesBuilder packed) {
+        scratch.reset();
+        final long started = System.nanoTime();
+        encode(snapshot, scratch);
+        metrics.recordEncodeTime(System.nanoTime() - started);
+        return seal(routeOf(snapshot), snapshot.getLevel(), false, scratch, codec, packed);
+    }
+
+    /**
+     * Wraps an encoded payload into a message, compressing it unless it is
+     *  below the compression threshold or does not shrink
+     */
+    private Envelope seal(String key, Level level, boolean framed, BytesBuilder payload, PayloadCodec codec, BytesBuilder packed) {
+        final MessageProperties _properties = getMessageProperties();
+        if (codec != null && payload.size() >= compressionThreshold) {
+            packed.reset();
+            codec.compress(payload.array(), 0, payload.size(), packed);
+            if (packed.size() < payload.size()) {
+                return new Envelope(key, _properties.get(level, framed, true), packed.toByteArray());
+            }
+        }
+        return new Envelope(key, _properties.get(level, framed, false), payload.toByteArray());
+    }
+
+    /**
+     * Builds the property templates of the messages, once the layout and the
+     *  compression codec are known
+     */
+    private MessageProperties getMessageProperties() {
+        MessageProperties _properties = messageProperties;
+        if (_properties == null) {
+            synchronized (this) {
+                _properties = messageProperties;
+                if (_properties == null) {
+                    PayloadCodec codec = PayloadCodec.forName(compression);
+                    String encoding = null;
+                    if (codec != null) {
+                        encoding = codec.getEncoding();
+                        codec.close();
+                    }
+                    messageProperties = _properties = new MessageProperties(identifier,
+                            (layout != null) ? layout.getContentType() : "text/plain",
+                            BATCH_CONTENT_TYPE, encoding, messageExpiration, correlationIdEnabled);
+                }
+            }
+        }
+        return _properties;
+    }
+
+    /**
+     * Resolves the routing key of an event through the compiled template
+     */
+    private String routeOf(EventSnapshot snapshot) {
+        final RoutingPlan _routingPlan = routingPlan;
+        return (_routingPlan != null) ? _routingPlan.resolve(snapshot.getLoggerName(), snapshot.getLevel()) : routingKey;
+    }
+
+    /**
+     * Compiles the routing key template, which is used as a plain key when
+     *  it is invalid
+     */
+    private void initRoutingPlan() {
+        try {
+            routingPlan = RoutingPlan.compile(routingKey, identifier);
+        } catch (IllegalArgumentException iae) {
+            errorHandler.error(iae.getMessage(), iae, ErrorCode.GENERIC_FAILURE);
+            routingPlan = null;
+        }
+        if (isTemplated() && !hasRoutingBindings() && !isTopicExchange()) {
+            errorHandler.error("The templated routingKey [" + routingKey + "] needs routingBindings to bind the queue"
+                    + " to the " + exchangeType + " exchange, the queue is left unbound", null, ErrorCode.GENERIC_FAILURE);
+        }
+    }
+
+    private boolean isTemplated() {
+        final RoutingPlan _routingPlan = routingPlan;
+        return _routingPlan != null && !_routingPlan.isStatic();
+    }
+
+    private boolean hasRoutingBindings() {
+        return routingBindings != null && !routingBindings.trim().isEmpty();
+    }
+
+    private boolean isTopicExchange() {
+        return "topic".equals(exchangeType);
+    }
+
+    /**
+     * @return String[] the binding keys of the queue: routingBindings if set,
+     *  otherwise the routing key itself, or "#" if it is a template on a
+     *  topic exchange, on which "#" matches any key. No key is returned for
+     *  a template on another exchange type, where "#" would be literal.
+     */
+    private String[] getBindingKeys() {
+        if (hasRoutingBindings()) {
+            String[] keys = routingBindings.split(",");
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keys[i].trim();
+            }
+            return keys;
+        }
+        if (isTemplated()) {
+            return isTopicExchange() ? new String[] { "#" } : new String[0];
+        }
+        final RoutingPlan _routingPlan = routingPlan;
+        return new String[] { (_routingPlan != null) ? _routingPlan.resolve(null, null) : routingKey };
+    }
+
+    /**
+     * Encodes the payload straight into the given buffer when the layout
+     *  supports it, so that the only copy is the final message body. The
+     *  other layouts, such as PatternLayout, are not thread-safe and are
+     *  shared by the publisher workers.
+     */
+    private void encode(EventSnapshot snapshot, BytesBuilder out) {
+        final Layout _layout = layout;
+        if (_layout instanceof ByteLayout) {
+            ((ByteLayout) _layout).format(snapshot, out);
+            return;
+        }
+        final String text;
+        synchronized (_layout) {
+            text = _layout.format(snapshot.toLoggingEvent());
+        }
+        out.write(text.getBytes(UTF_8));
+    }
+
+    /**
+     * Stores an envelope in the disk spool
+     * 
+     * @param envelope the message
+     * @return boolean true if the envelope has been spooled
+     */
+    private boolean spill(Envelope envelope) {
+        final DiskSpool _spool = spool;
+        try {
+            if (_spool != null && _spool.append(envelope)) {
+                return true;
+            }
+        } catch (IOException | RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.WRITE_FAILURE);
+        }
+        metrics.markDropped();
+        return false;
+    }
+
+    /**
+     * Opens the disk spool and schedules the replay of its content
+     */
+    private void openSpool() {
+        if (spool != null || spoolDirectory == null || spoolDirectory.isEmpty()) {
+            return;
+        }
+        try {
+            spool = new DiskSpool(new File(spoolDirectory), spoolSegmentSize, spoolMaxSize);
+        } catch (IOException ioe) {
+            errorHandler.error(ioe.getMessage(), ioe, ErrorCode.FILE_OPEN_FAILURE);
+            return;
+        }
+        getHousekeeper().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                replaySpool();
+            }
+        }, REPLAY_INTERVAL, REPLAY_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers the metrics MBean, replacing the one of a previous appender
+     *  of the same name
+     */
+    private void registerMetrics() {
+        if (!jmxEnabled || metricsName != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.devebot.opflow.log4j:type=RabbitMQAppender,name="
+                    + ObjectName.quote(String.valueOf(getName())));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metrics, objectName);
+            metricsName = objectName;
+        } catch (JMException | RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+        }
+    }
+
+    private void unregisterMetrics() {
+        final ObjectName objectName = metricsName;
+        if (objectName == null) {
+            return;
+        }
+        metricsName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.CLOSE_FAILURE);
+        }
+    }
+
+    private void addShutdownHook() {
+        if (!shutdownHookEnabled || shutdownHook != null) {
+            return;
+        }
+        final Thread hook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "opflow-log4j-amqp-" + getName() + "-shutdown");
+        try {
+            Runtime.getRuntime().addShutdownHook(hook);
+            shutdownHook = hook;
+        } catch (IllegalStateException | SecurityException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+        }
+    }
+
+    private void removeShutdownHook() {
+        final Thread hook = shutdownHook;
+        if (hook == null) {
+            return;
+        }
+        shutdownHook = null;
+        if (hook == Thread.currentThread()) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // the JVM is shutting down, the hook finds the appender closed
+        } catch (SecurityException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.CLOSE_FAILURE);
+        }
+    }
+
+    /**
+     * Creates the thread which runs the periodic tasks of the appender
+     */
+    private ScheduledExecutorService getHousekeeper() {
+        if (housekeeper == null) {
+            housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "opflow-log4j-amqp-housekeeper-" + getName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return housekeeper;
+    }
+
+    /**
+     * Builds the rate limiter and schedules the report of the suppressed
+     *  events, if any limit or sampling ratio is configured
+     */
+    private void initRateLimiter() {
+        try {
+            RateLimiter _rateLimiter = new RateLimiter(JsonTool.toJsonMap(loggerRateLimits),
+                    JsonTool.toJsonMap(levelRateLimits), JsonTool.toJsonMap(samplingRatios));
+            rateLimiter = _rateLimiter.isEmpty() ? null : _rateLimiter;
+        } catch (RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+            rateLimiter = null;
+        }
+        if (rateLimiter != null && suppressionReportInterval > 0) {
+            getHousekeeper().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reportSuppressed();
+                }
+            }, suppressionReportInterval, suppressionReportInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Builds the table of the repeated events and schedules the closing of
+     *  their aggregation windows
+     */
+    private void initAggregator() {
+        if (aggregationWindow <= 0) {
+            aggregator = null;
+            return;
+        }
+        aggregator = new Aggregator(aggregationCapacity, aggregationWindow, new Aggregator.Sink() {
+            @Override
+            public void publish(EventSnapshot summary) {
+                dispatch(summary);
+            }
+        });
+        long period = Math.max(10, aggregationWindow / 2);
+        getHousekeeper().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                final Aggregator _aggregator = aggregator;
+                if (_aggregator != null && !shutdown) {
+                    try {
+                        _aggregator.sweep(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+                    }
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes a summary event with the numbers of events which have been
+     *  suppressed by the rate limits and the sampling since the last report
+     */
+    private void reportSuppressed() {
+        final RateLimiter _rateLimiter = rateLimiter;
+        if (_rateLimiter == null || shutdown) {
+            return;
+        }
+        Map<String, Long> counts = _rateLimiter.drainSuppressed();
+        if (counts.isEmpty()) {
+            return;
+        }
+        long total = 0;
+        for (Long count : counts.values()) {
+            total += count;
+        }
+        String message = String.format("Suppressed %d log events in the last %d ms: %s", total, suppressionReportInterval, counts);
+        Logger logger = Logger.getLogger(RabbitMQAppender.class);
+        try {
+            dispatch(capture(new LoggingEvent(RabbitMQAppender.class.getName(), logger, Level.WARN, message, null)));
+        } catch (RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+        }
+    }
+
+    /**
+     * Drains the disk spool at the configured rate once the broker is reachable
+     */
+    private void replaySpool() {
+        final DiskSpool _spool = spool;
+        final Connection _connection = connection;
+        if (_spool == null || _spool.isEmpty() || shutdown) {
+            return;
+        }
+        if (_connection == null || !_connection.isOpen() || System.currentTimeMillis() < reconnectAt) {
+            return;
+        }
+        try {
+            final Publisher[] _publishers = getPublishers();
+            if (_publishers == null) {
+                return;
+            }
+            int quota = (int) (spoolReplayRate * REPLAY_INTERVAL / 1000);
+            for (Publisher _publisher : _publishers) {
+                _publisher.replay(_spool, Math.max(1, quota / _publishers.length));
+            }
+        } catch (IOException | RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
         }
-        return threadPool;
+    }
+
+    /**
+     * Schedules an attempt of the background connector on the housekeeper
+     * 
+     * @param delay the delay in milliseconds
+     */
+    private void scheduleConnector(long delay) {
+        if (shutdown) {
+            return;
+        }
+        try {
+            getHousekeeper().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            // the appender has been closed meanwhile
+        }
+    }
+
+    /**
+     * Opens the connection and the channel, then declares the exchange and
+     *  the queue, retrying after the reconnect delay until it succeeds. The
+     *  workers start publishing once it is done.
+     */
+    private void connect() {
+        if (shutdown) {
+            return;
+        }
+        try {
+            this.getConnection();
+            this.getChannel();
+            this.assertExchange();
+            this.assertQueue();
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            errorHandler.error(e.getMessage(), e, ErrorCode.GENERIC_FAILURE);
+            this.scheduleConnector(getReconnectDelay());
+            return;
+        }
+        connected = true;
+        final Publisher[] _publishers = publishers;
+        if (_publishers != null) {
+            for (Publisher _publisher : _publishers) {
+                _publisher.wake();
+            }
+        }
+    }
+
+    private long getReconnectDelay() {
+        return (networkRecoveryInterval > 0) ? networkRecoveryInterval : DEFAULT_RECONNECT_DELAY;
+    }
+
+    /**
+     * Starts the publisher workers on the first event
+     * 
+     * @return Publisher[] the workers, null once the appender is closed
+     */
+    private Publisher[] getPublishers() {
+        Publisher[] _publishers = publishers;
+        if (_publishers == null) {
+            synchronized (publishersLock) {
+                _publishers = publishers;
+                if (_publishers == null && !shutdown) {
+                    _publishers = new Publisher[Math.max(1, publisherWorkers)];
+                    for (int i = 0; i < _publishers.length; i++) {
+                        _publishers[i] = new Publisher(i, bufferSize, batchSize);
+                        _publishers[i].start();
+                    }
+                    publishers = _publishers;
+                }
+            }
+        }
+        return _publishers;
     }
     
     /**
-     * Closes the channel and connection to RabbitMQ when shutting down the appender
+     * Waits for the events appended so far to be published, and confirmed
+     *  in confirm mode, the appender remaining open
+     * 
+     * @param timeout the maximum time to wait in milliseconds
+     * @return boolean true if all of them have been handed to the broker
+     */
+    public boolean flush(long timeout) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        final Aggregator _aggregator = aggregator;
+        if (_aggregator != null && publishers != null) {
+            _aggregator.flushAll();
+        }
+        final Publisher[] _publishers = publishers;
+        if (_publishers != null) {
+            for (Publisher _publisher : _publishers) {
+                if (!_publisher.awaitDrained(deadline)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the channel and connection to RabbitMQ when shutting down the
+     *  appender, after publishing the buffered events within closeTimeout
      */
     @Override
     public void close() {
-        if (threadPool != null) {
-            threadPool.shutdown();
-            try {
-                if (!threadPool.awaitTermination(60, TimeUnit.SECONDS)) {
-                    threadPool.shutdownNow();
-                    threadPool.awaitTermination(60, TimeUnit.SECONDS);
-                }
-            } catch (InterruptedException ie) {
-                threadPool.shutdownNow();
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, closeTimeout));
+        this.removeShutdownHook();
+        final Aggregator _aggregator = aggregator;
+        if (_aggregator != null && publishers != null) {
+            _aggregator.flushAll();
+        }
+        aggregator = null;
+        shutdown = true;
+        closed = true;
+
+        // no periodic task may dispatch events past this point
+        final ScheduledExecutorService _housekeeper = housekeeper;
+        if (_housekeeper != null) {
+            _housekeeper.shutdownNow();
+            housekeeper = null;
+        }
+
+        final Publisher[] _publishers;
+        synchronized (publishersLock) {
+            _publishers = publishers;
+            publishers = null;
+        }
+        if (_publishers != null) {
+            // all of the workers drain their buffers within the same deadline
+            for (Publisher _publisher : _publishers) {
+                _publisher.stop();
+            }
+            int abandoned = 0;
+            for (Publisher _publisher : _publishers) {
+                abandoned += _publisher.terminate(deadline);
+            }
+            if (abandoned > 0) {
+                errorHandler.error("Events not published before the close deadline: " + abandoned, null, ErrorCode.CLOSE_FAILURE);
             }
-            threadPool = null;
+        }
+        snapshots = null;
+
+        final DiskSpool _spool = spool;
+        if (_spool != null) {
+            _spool.close();
+            spool = null;
         }
 
         if (channel != null && channel.isOpen()) {
@@ -605,5 +2412,7 @@ public class RabbitMQAppender extends AppenderSkeleton {
                 connection = null;
             }
         }
+
+        this.unregisterMetrics();
     }
 }
@@ -0,0 +1,158 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Folds the repeats of an event (same logger, level, message and throwable
+ *  class) within a time window.
+ *
+ * The first occurrence goes through, the repeats are only counted in a
+ * bounded open-addressing table, then a single summary event carrying the
+ * repeatCount, firstSeen and lastSeen fields is published when the window
+ * closes. When there is no free slot around its fingerprint, an event is
+ * not aggregated at all.
+ *
+ * @author drupalex
+ */
+public class Aggregator {
+    private static final int MAX_PROBES = 8;
+    private static final int SEALED = Integer.MIN_VALUE / 2;
+
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    private final long window;
+    private final Sink sink;
+
+    /**
+     * Receives the summary events
+     */
+    public interface Sink {
+        void publish(EventSnapshot summary);
+    }
+
+    /**
+     * @param capacity the number of distinct events tracked at once
+     * @param window the length of the window in milliseconds
+     * @param sink the receiver of the summary events
+     */
+    public Aggregator(int capacity, long window, Sink sink) {
+        int size = (capacity < 2) ? 2 : Integer.highestOneBit(Math.min(capacity, 1 << 30) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.window = window;
+        this.sink = sink;
+    }
+
+    /**
+     * Counts the event if it repeats a tracked one, starts tracking it
+     *  otherwise
+     *
+     * @param snapshot the captured event fields
+     * @return boolean true if the event has been folded and must not be
+     *  published
+     */
+    public boolean fold(EventSnapshot snapshot) {
+        final long now = snapshot.getTimeStamp();
+        final int hash = fingerprint(snapshot);
+        int index = hash & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++, index = (index + 1) & mask) {
+            Entry entry = table.get(index);
+            if (entry == null) {
+                if (table.compareAndSet(index, null, new Entry(hash, snapshot, now))) {
+                    return false;
+                }
+                entry = table.get(index);
+                if (entry == null) {
+                    return false;
+                }
+            }
+            if (entry.hash != hash || !entry.matches(snapshot)) {
+                continue;
+            }
+            if (now - entry.firstSeen < window && entry.repeat(now)) {
+                return true;
+            }
+            if (table.compareAndSet(index, entry, new Entry(hash, snapshot, now))) {
+                flush(entry);
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Publishes the summaries of the windows which have closed
+     *
+     * @param now the current time in milliseconds
+     */
+    public void sweep(long now) {
+        for (int i = 0; i < table.length(); i++) {
+            Entry entry = table.get(i);
+            if (entry != null && now - entry.firstSeen >= window && table.compareAndSet(i, entry, null)) {
+                flush(entry);
+            }
+        }
+    }
+
+    /**
+     * Publishes the summaries of all the tracked events
+     */
+    public void flushAll() {
+        sweep(Long.MAX_VALUE);
+    }
+
+    private void flush(Entry entry) {
+        int repeats = entry.count.getAndSet(SEALED);
+        if (repeats > 0) {
+            sink.publish(new EventSnapshot().copyFrom(entry.template).aggregate(repeats, entry.firstSeen, entry.lastSeen));
+        }
+    }
+
+    private static int fingerprint(EventSnapshot snapshot) {
+        int hash = snapshot.getLoggerName().hashCode();
+        hash = 31 * hash + snapshot.getLevel().toInt();
+        hash = 31 * hash + ((snapshot.getMessage() != null) ? snapshot.getMessage().hashCode() : 0);
+        if (snapshot.getThrowable() != null) {
+            hash = 31 * hash + snapshot.getThrowable().getClass().getName().hashCode();
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry {
+        final int hash;
+        final EventSnapshot template;
+        final long firstSeen;
+        final AtomicInteger count = new AtomicInteger();
+        volatile long lastSeen;
+
+        Entry(int hash, EventSnapshot snapshot, long firstSeen) {
+            this.hash = hash;
+            this.template = new EventSnapshot().copyFrom(snapshot);
+            this.firstSeen = firstSeen;
+            this.lastSeen = firstSeen;
+        }
+
+        boolean matches(EventSnapshot snapshot) {
+            Throwable t = snapshot.getThrowable();
+            Throwable o = template.getThrowable();
+            return template.getLevel() == snapshot.getLevel()
+                    && template.getLoggerName().equals(snapshot.getLoggerName())
+                    && (template.getMessage() == null ? snapshot.getMessage() == null : template.getMessage().equals(snapshot.getMessage()))
+                    && (t == null ? o == null : o != null && t.getClass() == o.getClass());
+        }
+
+        /**
+         * @return boolean false if the entry has been flushed meanwhile
+         */
+        boolean repeat(long now) {
+            if (count.incrementAndGet() <= 0) {
+                return false;
+            }
+            if (now > lastSeen) {
+                lastSeen = now;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the pipeline of an appender, exposed
+ *  through JMX.
+ *
+ * The counters of the calling threads are striped, the histograms are
+ * recorded by the publisher workers, so that the metrics are always on.
+ *
+ * @author drupalex
+ */
+public class AppenderMetrics implements AppenderMetricsMBean {
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final StripedCounter appended = new StripedCounter();
+    private final StripedCounter filtered = new StripedCounter();
+    private final StripedCounter aggregated = new StripedCounter();
+    private final StripedCounter enqueued = new StripedCounter();
+    private final StripedCounter published = new StripedCounter();
+    private final StripedCounter failed = new StripedCounter();
+    private final StripedCounter dropped = new StripedCounter();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private final LatencyHistogram encodeTime = new LatencyHistogram();
+    private final Probe probe;
+
+    /**
+     * Reads the state of the buffers when the metrics are queried
+     */
+    public interface Probe {
+        int getBufferOccupancy();
+
+        int getBufferCapacity();
+    }
+
+    public AppenderMetrics(Probe probe) {
+        this.probe = probe;
+    }
+
+    public void markAppended() {
+        appended.increment();
+    }
+
+    public void markFiltered() {
+        filtered.increment();
+    }
+
+    public void markAggregated() {
+        aggregated.increment();
+    }
+
+    public void markEnqueued() {
+        enqueued.increment();
+    }
+
+    public void markPublished() {
+        published.increment();
+    }
+
+    public void markFailed() {
+        failed.increment();
+    }
+
+    public void markDropped() {
+        dropped.increment();
+    }
+
+    public void markReconnect() {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * @param nanos the time from the handover to the publishing
+     */
+    public void recordPublishLatency(long nanos) {
+        publishLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos the time spent in the layout
+     */
+    public void recordEncodeTime(long nanos) {
+        encodeTime.record(nanos);
+    }
+
+    @Override
+    public long getAppendedCount() {
+        return appended.sum();
+    }
+
+    @Override
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    @Override
+    public long getAggregatedCount() {
+        return aggregated.sum();
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public int getBufferOccupancy() {
+        return (probe != null) ? probe.getBufferOccupancy() : 0;
+    }
+
+    @Override
+    public int getBufferCapacity() {
+        return (probe != null) ? probe.getBufferCapacity() : 0;
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    @Override
+    public long getPublishLatencyCount() {
+        return publishLatency.snapshot().getCount();
+    }
+
+    @Override
+    public double getPublishLatencyMean() {
+        return publishLatency.snapshot().getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getPublishLatencyP50() {
+        return micros(publishLatency, 50);
+    }
+
+    @Override
+    public double getPublishLatencyP99() {
+        return micros(publishLatency, 99);
+    }
+
+    @Override
+    public double getPublishLatencyP999() {
+        return micros(publishLatency, 99.9);
+    }
+
+    @Override
+    public double getPublishLatencyMax() {
+        return publishLatency.snapshot().getMax() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public long getEncodeTimeCount() {
+        return encodeTime.snapshot().getCount();
+    }
+
+    @Override
+    public double getEncodeTimeMean() {
+        return encodeTime.snapshot().getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getEncodeTimeP50() {
+        return micros(encodeTime, 50);
+    }
+
+    @Override
+    public double getEncodeTimeP99() {
+        return micros(encodeTime, 99);
+    }
+
+    @Override
+    public double getEncodeTimeP999() {
+        return micros(encodeTime, 99.9);
+    }
+
+    @Override
+    public double getEncodeTimeMax() {
+        return encodeTime.snapshot().getMax() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public void resetLatencies() {
+        publishLatency.reset();
+        encodeTime.reset();
+    }
+
+    public LatencyHistogram getPublishLatency() {
+        return publishLatency;
+    }
+
+    public LatencyHistogram getEncodeTime() {
+        return encodeTime;
+    }
+
+    private static double micros(LatencyHistogram histogram, double percentile) {
+        return histogram.snapshot().getValueAtPercentile(percentile) / NANOS_PER_MICRO;
+    }
+}
@@ -0,0 +1,80 @@
+package com.devebot.opflow.log4j.helpers;
+
+/**
+ * Management interface of the counters of an appender.
+ *
+ * The latencies are given in microseconds. PublishLatency is the time from
+ * the handover of an event to its publisher worker until its message has
+ * been written to the channel, EncodeTime the time spent in the layout.
+ *
+ * @author drupalex
+ */
+public interface AppenderMetricsMBean {
+
+    /**
+     * @return long the events which have passed the threshold and filters
+     */
+    long getAppendedCount();
+
+    /**
+     * @return long the events rejected by the threshold, the filters, the
+     *  rate limits or the sampling
+     */
+    long getFilteredCount();
+
+    /**
+     * @return long the repeats folded into a summary event
+     */
+    long getAggregatedCount();
+
+    long getEnqueuedCount();
+
+    /**
+     * @return long the messages written to the channel, a framed batch and a
+     *  retry counting as one message each
+     */
+    long getPublishedCount();
+
+    /**
+     * @return long the events which could not be encoded and the messages
+     *  which could not be published nor spooled
+     */
+    long getFailedCount();
+
+    long getDroppedCount();
+
+    int getBufferOccupancy();
+
+    int getBufferCapacity();
+
+    long getReconnectCount();
+
+    long getPublishLatencyCount();
+
+    double getPublishLatencyMean();
+
+    double getPublishLatencyP50();
+
+    double getPublishLatencyP99();
+
+    double getPublishLatencyP999();
+
+    double getPublishLatencyMax();
+
+    long getEncodeTimeCount();
+
+    double getEncodeTimeMean();
+
+    double getEncodeTimeP50();
+
+    double getEncodeTimeP99();
+
+    double getEncodeTimeP999();
+
+    double getEncodeTimeMax();
+
+    /**
+     * Clears the latency histograms, the counters are kept
+     */
+    void resetLatencies();
+}
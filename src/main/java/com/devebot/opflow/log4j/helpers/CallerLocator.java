@@ -0,0 +1,48 @@
+package com.devebot.opflow.log4j.helpers;
+
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Resolves the caller location of an event, on the logging thread.
+ *
+ * log4j prints the stack trace of a new Throwable and parses its text. This
+ * version walks the StackTraceElements of the Throwable instead: the caller is
+ * the first frame after the ones of the logger class. The Java 9+ version,
+ * packaged in META-INF/versions/9 of the multi-release jar, walks the stack
+ * with StackWalker and stops at that frame. Either way the result is a
+ * LocationInfo built from its four parts, with nothing left to parse.
+ *
+ * @author drupalex
+ */
+public final class CallerLocator {
+
+    private CallerLocator() {
+    }
+
+    /**
+     * @param event the current logging event object
+     * @return LocationInfo the location of the caller of the logger, or the
+     *  one computed by log4j if the logger class is not on the stack
+     */
+    public static LocationInfo locate(LoggingEvent event) {
+        final String fqcn = event.getFQNOfLoggerClass();
+        if (fqcn == null || event.locationInformationExists()) {
+            return event.getLocationInformation();
+        }
+        StackTraceElement[] frames = new Throwable().getStackTrace();
+        boolean inLogger = false;
+        for (StackTraceElement frame : frames) {
+            if (fqcn.equals(frame.getClassName())) {
+                inLogger = true;
+            } else if (inLogger) {
+                return toLocationInfo(frame.getFileName(), frame.getClassName(), frame.getMethodName(), frame.getLineNumber());
+            }
+        }
+        return event.getLocationInformation();
+    }
+
+    static LocationInfo toLocationInfo(String fileName, String className, String methodName, int lineNumber) {
+        return new LocationInfo(fileName, className, methodName, (lineNumber >= 0) ? String.valueOf(lineNumber) : LocationInfo.NA);
+    }
+}
@@ -0,0 +1,194 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.rabbitmq.nostro.client.ConfirmListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding window of the messages published in confirm mode.
+ *
+ * The publish sequence numbers of a channel are contiguous, so the window is
+ * a circular array indexed by sequence number: registering, acknowledging a
+ * single tag or a whole multiple-ack range never allocates nor boxes a key.
+ * The publisher waits in {@link #register} while the window is full, which
+ * gives natural backpressure. Nacked messages, and the ones left over when
+ * the channel has been replaced, are queued for retry. A message retried
+ * more than maxRetries times is abandoned and counted as dropped.
+ *
+ * The delivery is at-least-once. When the window stays full for longer than
+ * the timeout, all the messages in flight are queued for retry, although
+ * the broker may still confirm them later: such a message is then delivered
+ * twice. The same holds for the messages of a replaced channel, which the
+ * broker may have received before the channel was lost.
+ *
+ * @author drupalex
+ */
+public class ConfirmTracker implements ConfirmListener {
+    private final Envelope[] window;
+    private final int mask;
+    private final int maxRetries;
+    private final RingBuffer<Envelope> retries;
+    private final AppenderMetrics metrics;
+    private final AtomicLong confirmedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+    private long lowest = 0;
+    private long next = 0;
+
+    public ConfirmTracker(int windowSize, int maxRetries) {
+        this(windowSize, maxRetries, null);
+    }
+
+    /**
+     * @param windowSize the maximum number of messages in flight
+     * @param maxRetries the number of retries before a message is abandoned
+     * @param metrics the metrics of the appender, which count the abandoned
+     *  messages as dropped, or null
+     */
+    public ConfirmTracker(int windowSize, int maxRetries, AppenderMetrics metrics) {
+        int capacity = Integer.highestOneBit(Math.max(1, windowSize - 1)) << 1;
+        this.window = new Envelope[capacity];
+        this.mask = capacity - 1;
+        this.maxRetries = maxRetries;
+        this.retries = new RingBuffer<>(capacity);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records an envelope that is about to be published with the given
+     *  sequence number, waiting while the in-flight window is full. On
+     *  timeout, the messages in flight are queued for retry even though they
+     *  may still be confirmed, and may thus be published twice.
+     * 
+     * @param seqNo the next publish sequence number of the channel
+     * @param envelope the message to be published
+     * @param timeout how long to wait for a free slot (milliseconds)
+     * @throws InterruptedException
+     */
+    public synchronized void register(long seqNo, Envelope envelope, long timeout) throws InterruptedException {
+        if (seqNo != next) {
+            // the channel has been replaced or recovered, nothing in flight will be confirmed
+            requeueAll();
+            lowest = next = seqNo;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (next - lowest >= window.length) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                requeueAll();
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        window[(int) seqNo & mask] = envelope;
+        next = seqNo + 1;
+    }
+
+    /**
+     * Waits until all in-flight messages have been confirmed
+     * 
+     * @param timeout the maximum time to wait (milliseconds)
+     * @return boolean true if nothing is in flight anymore
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitConfirms(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (lowest < next) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Releases the slot of an envelope whose publishing has failed
+     * 
+     * @param seqNo the sequence number given to {@link #register}
+     */
+    public synchronized void forget(long seqNo) {
+        if (seqNo >= lowest && seqNo < next) {
+            window[(int) seqNo & mask] = null;
+            while (lowest < next && window[(int) lowest & mask] == null) {
+                lowest++;
+            }
+            notifyAll();
+        }
+    }
+
+    public Envelope pollRetry() {
+        return retries.poll();
+    }
+
+    public synchronized int getInFlight() {
+        return (int) (next - lowest);
+    }
+
+    public long getConfirmedCount() {
+        return confirmedCount.get();
+    }
+
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    public long getAbandonedCount() {
+        return abandonedCount.get();
+    }
+
+    @Override
+    public synchronized void handleAck(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple, false);
+    }
+
+    @Override
+    public synchronized void handleNack(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple, true);
+    }
+
+    private void settle(long deliveryTag, boolean multiple, boolean failed) {
+        long from = multiple ? lowest : Math.max(lowest, deliveryTag);
+        long to = Math.min(deliveryTag, next - 1);
+        for (long seqNo = from; seqNo <= to; seqNo++) {
+            int index = (int) seqNo & mask;
+            Envelope envelope = window[index];
+            if (envelope != null) {
+                window[index] = null;
+                if (failed) {
+                    retry(envelope);
+                } else {
+                    confirmedCount.incrementAndGet();
+                }
+            }
+        }
+        while (lowest < next && window[(int) lowest & mask] == null) {
+            lowest++;
+        }
+        notifyAll();
+    }
+
+    private void requeueAll() {
+        for (long seqNo = lowest; seqNo < next; seqNo++) {
+            int index = (int) seqNo & mask;
+            if (window[index] != null) {
+                retry(window[index]);
+                window[index] = null;
+            }
+        }
+        lowest = next;
+        notifyAll();
+    }
+
+    private void retry(Envelope envelope) {
+        if (envelope.nextAttempt() <= maxRetries && retries.offer(envelope)) {
+            retriedCount.incrementAndGet();
+        } else {
+            abandonedCount.incrementAndGet();
+            if (metrics != null) {
+                metrics.markDropped();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local spool made of fixed-size memory-mapped segment files.
+ *
+ * Each record is a length prefix followed by the serialized envelope. The
+ * length is written last, so a record torn by a crash reads as the zero
+ * terminator of a freshly allocated segment. Segments are consumed in
+ * order and deleted once they have been fully read; segments left over
+ * by a previous run are replayed first.
+ *
+ * @author drupalex
+ */
+public class DiskSpool {
+    private static final String SUFFIX = ".spool";
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final Deque<File> segments = new ArrayDeque<>();
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private long nextSegmentId = 0;
+
+    private File writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private int writePosition;
+
+    private File readSegment;
+    private MappedByteBuffer readBuffer;
+    private int readPosition;
+
+    public DiskSpool(File directory, int segmentSize, long maxSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the spool directory: " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                segments.addLast(file);
+                nextSegmentId = Math.max(nextSegmentId, parseSegmentId(file) + 1);
+            }
+        }
+    }
+
+    /**
+     * Appends an envelope at the end of the spool
+     * 
+     * @param envelope the message to be stored
+     * @return boolean false if the envelope does not fit in the disk cap
+     * @throws IOException
+     */
+    public synchronized boolean append(Envelope envelope) throws IOException {
+        byte[] record = envelope.serialize();
+        if (record.length + 4 > segmentSize) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        if (writeBuffer == null || writePosition + 4 + record.length > segmentSize) {
+            if ((segments.size() + 1L) * segmentSize > maxSize) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            roll();
+        }
+        // through Buffer, not the covariant overloads added by Java 9
+        ((Buffer) writeBuffer).position(writePosition + 4);
+        writeBuffer.put(record);
+        writeBuffer.putInt(writePosition, record.length);
+        writePosition += 4 + record.length;
+        spooledCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the oldest envelope from the spool
+     * 
+     * @return Envelope the oldest envelope or null if the spool is empty
+     * @throws IOException
+     */
+    public synchronized Envelope poll() throws IOException {
+        while (true) {
+            if (readBuffer == null) {
+                File head = segments.peekFirst();
+                if (head == null) {
+                    return null;
+                }
+                readSegment = head;
+                readBuffer = (head == writeSegment) ? writeBuffer : map(head, FileChannel.MapMode.READ_ONLY);
+                readPosition = 0;
+            }
+            int limit = (readSegment == writeSegment) ? writePosition : readBuffer.capacity();
+            if (readPosition + 4 <= limit) {
+                int length = readBuffer.getInt(readPosition);
+                if (length > 0 && readPosition + 4 + length <= limit) {
+                    byte[] record = new byte[length];
+                    ByteBuffer source = ((ByteBuffer) readBuffer).duplicate();
+                    ((Buffer) source).position(readPosition + 4);
+                    source.get(record);
+                    readPosition += 4 + length;
+                    replayedCount.incrementAndGet();
+                    return Envelope.deserialize(record);
+                }
+            }
+            if (readSegment == writeSegment) {
+                return null;
+            }
+            segments.pollFirst();
+            readBuffer = null;
+            if (!readSegment.delete()) {
+                throw new IOException("Cannot delete the spool segment: " + readSegment);
+            }
+            readSegment = null;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        if (segments.isEmpty()) {
+            return true;
+        }
+        return segments.size() == 1 && readSegment == writeSegment && readBuffer != null && readPosition >= writePosition;
+    }
+
+    public synchronized long getDiskUsage() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes the current write segment to the disk
+     */
+    public synchronized void close() {
+        if (writeBuffer != null) {
+            writeBuffer.force();
+        }
+    }
+
+    private void roll() throws IOException {
+        if (writeBuffer != null) {
+            writeBuffer.force();
+        }
+        File segment = new File(directory, String.format("%019d%s", nextSegmentId++, SUFFIX));
+        writeBuffer = map(segment, FileChannel.MapMode.READ_WRITE);
+        writeSegment = segment;
+        writePosition = 0;
+        segments.addLast(segment);
+    }
+
+    private MappedByteBuffer map(File segment, FileChannel.MapMode mode) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            long size = segmentSize;
+            if (mode == FileChannel.MapMode.READ_WRITE) {
+                file.setLength(size);
+            } else {
+                size = file.length();
+            }
+            return file.getChannel().map(mode, 0, size);
+        }
+    }
+
+    private static long parseSegmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.rabbitmq.nostro.client.AMQP;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * An encoded message ready to be published, kept around until the broker
+ *  has taken responsibility for it
+ *
+ * @author drupalex
+ */
+public class Envelope {
+    private final String routingKey;
+    private final AMQP.BasicProperties properties;
+    private final byte[] body;
+    private int attempts = 0;
+
+    public Envelope(String routingKey, AMQP.BasicProperties properties, byte[] body) {
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public AMQP.BasicProperties getProperties() {
+        return properties;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    int nextAttempt() {
+        return ++attempts;
+    }
+
+    /**
+     * Serializes the routing key, the properties and the body, so that the
+     *  envelope can be stored outside of the heap
+     * 
+     * @return byte[] the serialized envelope
+     * @throws IOException
+     */
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, routingKey);
+        writeString(out, properties.getContentType());
+        writeString(out, properties.getContentEncoding());
+        writeString(out, properties.getType());
+        writeString(out, properties.getAppId());
+        writeString(out, properties.getCorrelationId());
+        writeString(out, properties.getExpiration());
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static Envelope deserialize(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String routingKey = readString(in);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties().builder()
+                .contentType(readString(in))
+                .contentEncoding(readString(in))
+                .type(readString(in))
+                .appId(readString(in))
+                .correlationId(readString(in))
+                .expiration(readString(in))
+                .build();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new Envelope(routingKey, properties, body);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,181 @@
+package com.devebot.opflow.log4j.helpers;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+ * Flat copy of the fields of a LoggingEvent which the layouts render.
+ *
+ * It is captured on the calling thread, so that the thread name and the
+ * rendered message are resolved there and the application's message object
+ * is not kept alive while the event waits in the buffer. The logger name is
+ * the canonical string held by its Logger and the level is a shared constant,
+ * so neither is copied. Instances are mutable in order to be pooled: a
+ * snapshot must not be touched anymore once it has been released.
+ *
+ * @author drupalex
+ */
+public class EventSnapshot {
+    private Level level;
+    private long timeStamp;
+    private String loggerName;
+    private String threadName;
+    private Object message;
+    private Throwable throwable;
+    private LocationInfo locationInfo;
+    private int repeatCount;
+    private long firstSeen;
+    private long lastSeen;
+    private long enqueueTime;
+
+    /**
+     * Copies the fields of a LoggingEvent, must be called on the logging thread
+     *
+     * @param event the current logging event object
+     * @param withLocation resolves the caller location if true
+     * @return EventSnapshot this snapshot
+     */
+    public EventSnapshot capture(LoggingEvent event, boolean withLocation) {
+        this.level = event.getLevel();
+        this.timeStamp = event.getTimeStamp();
+        this.loggerName = event.getLoggerName();
+        this.threadName = event.getThreadName();
+        Object _message = event.getMessage();
+        if (_message == null || _message instanceof String || _message instanceof Number || _message instanceof Boolean) {
+            this.message = _message;
+        } else {
+            this.message = event.getRenderedMessage();
+        }
+        ThrowableInformation info = event.getThrowableInformation();
+        this.throwable = (info != null) ? info.getThrowable() : null;
+        this.locationInfo = withLocation ? CallerLocator.locate(event) : null;
+        return this;
+    }
+
+    /**
+     * Copies the fields of another snapshot
+     *
+     * @param other the snapshot to be copied
+     * @return EventSnapshot this snapshot
+     */
+    public EventSnapshot copyFrom(EventSnapshot other) {
+        this.level = other.level;
+        this.timeStamp = other.timeStamp;
+        this.loggerName = other.loggerName;
+        this.threadName = other.threadName;
+        this.message = other.message;
+        this.throwable = other.throwable;
+        this.locationInfo = other.locationInfo;
+        this.repeatCount = other.repeatCount;
+        this.firstSeen = other.firstSeen;
+        this.lastSeen = other.lastSeen;
+        return this;
+    }
+
+    /**
+     * Turns the snapshot into the summary of the repeats of an event
+     *
+     * @param repeatCount the number of repeats folded into this event
+     * @param firstSeen the time of the original event
+     * @param lastSeen the time of the last repeat, used as the timestamp
+     * @return EventSnapshot this snapshot
+     */
+    public EventSnapshot aggregate(int repeatCount, long firstSeen, long lastSeen) {
+        this.repeatCount = repeatCount;
+        this.firstSeen = firstSeen;
+        this.lastSeen = lastSeen;
+        this.timeStamp = lastSeen;
+        return this;
+    }
+
+    /**
+     * Drops the references before the snapshot goes back to its pool
+     */
+    public void clear() {
+        this.level = null;
+        this.timeStamp = 0;
+        this.loggerName = null;
+        this.threadName = null;
+        this.message = null;
+        this.throwable = null;
+        this.locationInfo = null;
+        this.repeatCount = 0;
+        this.firstSeen = 0;
+        this.lastSeen = 0;
+        this.enqueueTime = 0;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return Object the message if it is a String, a Number or a Boolean,
+     *  its rendered form otherwise
+     */
+    public Object getMessage() {
+        return message;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * @return LocationInfo the caller location or null if it was not captured
+     */
+    public LocationInfo getLocationInfo() {
+        return locationInfo;
+    }
+
+    /**
+     * @return int the number of folded repeats, 0 for a plain event
+     */
+    public int getRepeatCount() {
+        return repeatCount;
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * @return long the System#nanoTime of the handover to a publisher worker
+     */
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    public void setEnqueueTime(long enqueueTime) {
+        this.enqueueTime = enqueueTime;
+    }
+
+    /**
+     * Rebuilds a LoggingEvent for the layouts which only accept one
+     *
+     * @return LoggingEvent a new logging event object
+     */
+    public LoggingEvent toLoggingEvent() {
+        return new LoggingEvent(null, Logger.getLogger(loggerName), timeStamp, level, message, threadName,
+                (throwable != null) ? new ThrowableInformation(throwable) : null, null, locationInfo, null);
+    }
+}
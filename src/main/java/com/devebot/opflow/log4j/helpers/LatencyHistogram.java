@@ -0,0 +1,159 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with log-linear buckets as
+ *  in HdrHistogram.
+ *
+ * Each power of two is split into 16 linear sub-buckets, so a recorded value
+ * is reported with a relative error below 1/16, from 1 ns up to about 18
+ * minutes (longer ones fall into the last bucket). Recording is a few
+ * arithmetic operations and one atomic increment in the stripe of the current
+ * thread; the stripes are only merged by {@link #snapshot}.
+ *
+ * @author drupalex
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int STRIDE = BUCKETS + 8;
+
+    private final AtomicLongArray counts;
+    private final int mask;
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(4);
+    }
+
+    /**
+     * @param stripes the number of copies of the counts, rounded up to a power
+     *  of two, which should match the number of recording threads
+     */
+    public LatencyHistogram(int stripes) {
+        int size = (stripes < 2) ? 1 : Integer.highestOneBit(Math.min(stripes, 64) - 1) << 1;
+        this.counts = new AtomicLongArray(size * STRIDE);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a duration, the negative ones being ignored
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        final int base = StripedCounter.stripe(mask) * STRIDE;
+        counts.getAndIncrement(base + indexOf(nanos));
+        // the sum is kept after the buckets of the stripe
+        counts.getAndAdd(base + BUCKETS, nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Merges the stripes into a consistent enough copy of the counts
+     *
+     * @return Snapshot the merged counts
+     */
+    public Snapshot snapshot() {
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        long sum = 0;
+        for (int s = 0; s <= mask; s++) {
+            final int base = s * STRIDE;
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = counts.get(base + i);
+                merged[i] += n;
+                total += n;
+            }
+            sum += counts.get(base + BUCKETS);
+        }
+        return new Snapshot(merged, total, sum, max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude >= MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Merged counts of a histogram
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return (count > 0) ? (double) sum / count : 0;
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return long the highest value equivalent to the one at this
+         *  percentile, 0 if nothing has been recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.rabbitmq.nostro.client.AMQP;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Level;
+
+/**
+ * Immutable AMQP properties of the messages, built once per level, per kind
+ *  of body (single event or framed batch) and per encoding.
+ *
+ * Only the correlation id differs from one message to the next: it is the
+ * identifier and the activation time followed by a counter, so a message
+ * whose properties carry one costs a single BasicProperties copy, and none
+ * when the correlation ids are disabled.
+ *
+ * @author drupalex
+ */
+public class MessageProperties {
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR, Level.FATAL};
+
+    private final String appId;
+    private final String contentType;
+    private final String batchContentType;
+    private final String contentEncoding;
+    private final String expiration;
+    private final String correlationPrefix;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AMQP.BasicProperties[] templates;
+
+    /**
+     * @param appId the identifier of the application
+     * @param contentType the content type of a single event
+     * @param batchContentType the content type of a framed batch
+     * @param contentEncoding the encoding of the compressed bodies, null if
+     *  the compression is disabled
+     * @param expiration the message TTL in milliseconds, 0 for none
+     * @param correlated generates a correlation id for each message if true
+     */
+    public MessageProperties(String appId, String contentType, String batchContentType, String contentEncoding,
+            long expiration, boolean correlated) {
+        this.appId = appId;
+        this.contentType = contentType;
+        this.batchContentType = batchContentType;
+        this.contentEncoding = contentEncoding;
+        this.expiration = (expiration > 0) ? String.valueOf(expiration) : null;
+        this.correlationPrefix = correlated ? appId + ":" + System.currentTimeMillis() + ":" : null;
+        this.templates = new AMQP.BasicProperties[LEVELS.length * 4];
+        for (int i = 0; i < LEVELS.length; i++) {
+            for (int variant = 0; variant < 4; variant++) {
+                templates[i * 4 + variant] = build(LEVELS[i], (variant & 2) != 0, (variant & 1) != 0, null);
+            }
+        }
+    }
+
+    /**
+     * Returns the properties of a message
+     *
+     * @param level the level of the event, the most severe one of a batch
+     * @param framed true for a framed batch
+     * @param compressed true if the body has been compressed
+     * @return AMQP.BasicProperties the shared template, or a copy of it
+     *  carrying the next correlation id
+     */
+    public AMQP.BasicProperties get(Level level, boolean framed, boolean compressed) {
+        final String correlationId = (correlationPrefix != null) ? correlationPrefix + sequence.incrementAndGet() : null;
+        final int slot = slotOf(level);
+        if (slot < 0) {
+            return build(level, framed, compressed, correlationId);
+        }
+        final AMQP.BasicProperties template = templates[slot * 4 + (framed ? 2 : 0) + (compressed ? 1 : 0)];
+        if (correlationId == null) {
+            return template;
+        }
+        return new AMQP.BasicProperties(template.getContentType(), template.getContentEncoding(), template.getHeaders(),
+                template.getDeliveryMode(), template.getPriority(), correlationId, template.getReplyTo(),
+                template.getExpiration(), template.getMessageId(), template.getTimestamp(), template.getType(),
+                template.getUserId(), template.getAppId(), template.getClusterId());
+    }
+
+    private AMQP.BasicProperties build(Level level, boolean framed, boolean compressed, String correlationId) {
+        return new AMQP.BasicProperties().builder()
+                .appId(appId)
+                .correlationId(correlationId)
+                .type(level.toString())
+                .contentType(framed ? batchContentType : contentType)
+                .contentEncoding(compressed ? contentEncoding : null)
+                .expiration(expiration)
+                .build();
+    }
+
+    private static int slotOf(Level level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,28 @@
+package com.devebot.opflow.log4j.helpers;
+
+/**
+ * What the appender does with an event when its buffer is full
+ *
+ * @author drupalex
+ */
+public enum OverflowPolicy {
+    /** waits until the publisher frees a slot */
+    BLOCK,
+    /** discards the incoming event */
+    DROP_NEWEST,
+    /** evicts the oldest buffered event to make room */
+    DROP_OLDEST,
+    /** discards events below the overflow level, waits for the others */
+    DROP_BELOW_LEVEL;
+
+    public static OverflowPolicy parse(String name, OverflowPolicy defaultPolicy) {
+        if (name == null) {
+            return defaultPolicy;
+        }
+        try {
+            return OverflowPolicy.valueOf(name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return defaultPolicy;
+        }
+    }
+}
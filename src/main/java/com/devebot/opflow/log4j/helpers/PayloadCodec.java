@@ -0,0 +1,335 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the message bodies and names the matching contentEncoding.
+ *
+ * An instance keeps its compression state to be reused from one message to
+ * the next, so it must be confined to a single thread.
+ *
+ * @author drupalex
+ */
+public abstract class PayloadCodec {
+
+    /**
+     * @return String the value of the contentEncoding property
+     */
+    public abstract String getEncoding();
+
+    /**
+     * Appends the compressed form of the given bytes to the buffer
+     *
+     * @param src the source array
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @param out the target buffer
+     */
+    public abstract void compress(byte[] src, int off, int len, BytesBuilder out);
+
+    /**
+     * Restores the original bytes, for the consumers and the tests
+     *
+     * @param src the compressed bytes
+     * @return byte[] the original bytes
+     * @throws IOException if the data is corrupted
+     */
+    public abstract byte[] decompress(byte[] src) throws IOException;
+
+    /**
+     * Releases the native resources
+     */
+    public void close() {
+    }
+
+    /**
+     * Creates a codec by its name: "gzip", "deflate" or "lz4"
+     *
+     * @param name the name of the codec
+     * @return PayloadCodec the codec or null if compression is disabled
+     */
+    public static PayloadCodec forName(String name) {
+        if (name == null || name.isEmpty() || "none".equalsIgnoreCase(name)) {
+            return null;
+        }
+        switch (name.trim().toLowerCase()) {
+            case "gzip":
+                return new Gzip();
+            case "deflate":
+                return new Deflate();
+            case "lz4":
+                return new Lz4();
+            default:
+                throw new IllegalArgumentException("Unknown compression codec: " + name);
+        }
+    }
+
+    private static void deflate(Deflater deflater, byte[] src, int off, int len, BytesBuilder out) {
+        deflater.reset();
+        deflater.setInput(src, off, len);
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.ensureCapacity(Math.max(64, len >>> 2));
+            out.advance(deflater.deflate(out.array(), out.size(), out.array().length - out.size()));
+        }
+    }
+
+    /**
+     * zlib stream, as the "deflate" HTTP content coding
+     */
+    static class Deflate extends PayloadCodec {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        @Override
+        public String getEncoding() {
+            return "deflate";
+        }
+
+        @Override
+        public void compress(byte[] src, int off, int len, BytesBuilder out) {
+            deflate(deflater, src, off, len, out);
+        }
+
+        @Override
+        public byte[] decompress(byte[] src) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(src);
+                BytesBuilder out = new BytesBuilder(src.length * 4);
+                while (!inflater.finished()) {
+                    out.ensureCapacity(Math.max(64, src.length));
+                    int n = inflater.inflate(out.array(), out.size(), out.array().length - out.size());
+                    if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflate stream");
+                    }
+                    out.advance(n);
+                }
+                return out.toByteArray();
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+
+    /**
+     * gzip member written around a raw deflate stream
+     */
+    static class Gzip extends PayloadCodec {
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+
+        @Override
+        public String getEncoding() {
+            return "gzip";
+        }
+
+        @Override
+        public void compress(byte[] src, int off, int len, BytesBuilder out) {
+            out.write(HEADER);
+            deflate(deflater, src, off, len, out);
+            crc.reset();
+            crc.update(src, off, len);
+            writeIntLE(out, (int) crc.getValue());
+            writeIntLE(out, len);
+        }
+
+        @Override
+        public byte[] decompress(byte[] src) throws IOException {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(src))) {
+                BytesBuilder out = new BytesBuilder(src.length * 4);
+                byte[] chunk = new byte[4096];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    out.write(chunk, 0, n);
+                }
+                return out.toByteArray();
+            }
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+
+        private static void writeIntLE(BytesBuilder out, int value) {
+            out.write(value);
+            out.write(value >>> 8);
+            out.write(value >>> 16);
+            out.write(value >>> 24);
+        }
+    }
+
+    /**
+     * Raw LZ4 block prefixed with the original length as a 4-byte big-endian
+     *  int, without the magic number, descriptor and checksums of the LZ4
+     *  frame format. Its contentEncoding is therefore "x-lz4-block", so that
+     *  a consumer expecting LZ4 frames does not take it for one: it must read
+     *  the length, then decode the block with a raw block decompressor, such
+     *  as LZ4_decompress_safe. The compressor is a plain greedy one: much
+     *  faster than deflate, with a lower ratio.
+     */
+    static class Lz4 extends PayloadCodec {
+        // a literal run or a match expands to at most 255 bytes per byte
+        private static final int MAX_RATIO = 255;
+        private static final int MIN_MATCH = 4;
+        private static final int LAST_LITERALS = 5;
+        private static final int MF_LIMIT = 12;
+        private static final int HASH_LOG = 12;
+        private static final int MAX_DISTANCE = 65535;
+        private final int[] table = new int[1 << HASH_LOG];
+
+        @Override
+        public String getEncoding() {
+            return "x-lz4-block";
+        }
+
+        @Override
+        public void compress(byte[] src, int off, int len, BytesBuilder out) {
+            out.writeInt(len);
+            out.ensureCapacity(len + len / 255 + 16);
+            byte[] dst = out.array();
+            int start = out.size();
+            int op = start;
+            int end = off + len;
+            int matchLimit = end - LAST_LITERALS;
+            int mfLimit = end - MF_LIMIT;
+            int anchor = off;
+            int ip = off;
+            Arrays.fill(table, -1);
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = (sequence * -1640531535) >>> (32 - HASH_LOG);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+                while (ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen]) {
+                    matchLen++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLen - MIN_MATCH);
+                ip += matchLen;
+                anchor = ip;
+            }
+            op = writeSequence(src, anchor, end - anchor, dst, op, 0, -1);
+            out.advance(op - start);
+        }
+
+        @Override
+        public byte[] decompress(byte[] src) throws IOException {
+            if (src.length < 4) {
+                throw new IOException("Truncated lz4 block");
+            }
+            int length = readIntBE(src, 0);
+            if (length < 0 || length > (long) (src.length - 4) * MAX_RATIO) {
+                throw new IOException("Corrupted lz4 block length: " + length);
+            }
+            byte[] dst = new byte[length];
+            int ip = 4;
+            int op = 0;
+            try {
+                while (ip < src.length) {
+                    int token = src[ip++] & 0xff;
+                    int literals = token >>> 4;
+                    if (literals == 15) {
+                        int b;
+                        do {
+                            b = src[ip++] & 0xff;
+                            literals += b;
+                        } while (b == 255);
+                    }
+                    System.arraycopy(src, ip, dst, op, literals);
+                    ip += literals;
+                    op += literals;
+                    if (ip >= src.length) {
+                        break;
+                    }
+                    int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+                    ip += 2;
+                    int matchLen = token & 0x0f;
+                    if (matchLen == 15) {
+                        int b;
+                        do {
+                            b = src[ip++] & 0xff;
+                            matchLen += b;
+                        } while (b == 255);
+                    }
+                    matchLen += MIN_MATCH;
+                    if (offset == 0 || offset > op) {
+                        throw new IOException("Corrupted lz4 block");
+                    }
+                    for (int i = 0; i < matchLen; i++, op++) {
+                        dst[op] = dst[op - offset];
+                    }
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupted lz4 block", e);
+            }
+            if (op != length) {
+                throw new IOException("Truncated lz4 block");
+            }
+            return dst;
+        }
+
+        private static int writeSequence(byte[] src, int anchor, int literals, byte[] dst, int op, int offset, int matchLen) {
+            int tokenPos = op++;
+            int token = (literals >= 15) ? 0xf0 : (literals << 4);
+            if (literals >= 15) {
+                op = writeLength(literals - 15, dst, op);
+            }
+            System.arraycopy(src, anchor, dst, op, literals);
+            op += literals;
+            if (matchLen >= 0) {
+                dst[op++] = (byte) offset;
+                dst[op++] = (byte) (offset >>> 8);
+                if (matchLen >= 15) {
+                    token |= 0x0f;
+                    op = writeLength(matchLen - 15, dst, op);
+                } else {
+                    token |= matchLen;
+                }
+            }
+            dst[tokenPos] = (byte) token;
+            return op;
+        }
+
+        private static int writeLength(int length, byte[] dst, int op) {
+            while (length >= 255) {
+                dst[op++] = (byte) 255;
+                length -= 255;
+            }
+            dst[op++] = (byte) length;
+            return op;
+        }
+
+        private static int readInt(byte[] src, int pos) {
+            return (src[pos] & 0xff) | ((src[pos + 1] & 0xff) << 8) | ((src[pos + 2] & 0xff) << 16) | ((src[pos + 3] & 0xff) << 24);
+        }
+
+        private static int readIntBE(byte[] src, int pos) {
+            return ((src[pos] & 0xff) << 24) | ((src[pos + 1] & 0xff) << 16) | ((src[pos + 2] & 0xff) << 8) | (src[pos + 3] & 0xff);
+        }
+    }
+}
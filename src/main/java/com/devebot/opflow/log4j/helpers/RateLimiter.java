@@ -0,0 +1,159 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Level;
+
+/**
+ * Decides whether an event may be published, according to:
+ * <ul>
+ * <li>sampling ratios by level, e.g. {"DEBUG": 0.1, "TRACE": 0.01}</li>
+ * <li>rate limits by level, shared by all the loggers, e.g. {"INFO": 5000}</li>
+ * <li>rate limits by logger, e.g. {"com.example.dao": 100, "*": 1000}: each
+ *  logger has its own bucket, whose rate is the one of its closest
+ *  configured ancestor ("*" being the root)</li>
+ * </ul>
+ * The rates are in events per second, with a burst of one second.
+ *
+ * @author drupalex
+ */
+public class RateLimiter {
+    private static final String ROOT = "*";
+    private static final TokenBucket UNLIMITED = new TokenBucket(1, 1);
+
+    private final Map<String, Double> loggerRates;
+    private final Map<Integer, TokenBucket> levelBuckets;
+    private final Map<Integer, Double> samplingRatios;
+    private final ConcurrentMap<String, TokenBucket> loggerBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong sampledOut = new AtomicLong();
+
+    public RateLimiter(Map<String, Object> loggerRateLimits, Map<String, Object> levelRateLimits, Map<String, Object> samplingRatios) {
+        this.loggerRates = new HashMap<>();
+        if (loggerRateLimits != null) {
+            for (Map.Entry<String, Object> entry : loggerRateLimits.entrySet()) {
+                loggerRates.put(entry.getKey(), toDouble(entry.getValue()));
+            }
+        }
+        this.levelBuckets = new HashMap<>();
+        if (levelRateLimits != null) {
+            for (Map.Entry<String, Object> entry : levelRateLimits.entrySet()) {
+                double rate = toDouble(entry.getValue());
+                levelBuckets.put(toLevel(entry.getKey()).toInt(), new TokenBucket(rate, (int) Math.ceil(rate)));
+            }
+        }
+        this.samplingRatios = new HashMap<>();
+        if (samplingRatios != null) {
+            for (Map.Entry<String, Object> entry : samplingRatios.entrySet()) {
+                this.samplingRatios.put(toLevel(entry.getKey()).toInt(), toDouble(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @return boolean true if nothing is limited nor sampled
+     */
+    public boolean isEmpty() {
+        return loggerRates.isEmpty() && levelBuckets.isEmpty() && samplingRatios.isEmpty();
+    }
+
+    /**
+     * Checks the sampling ratio, the level bucket, then the logger bucket
+     *
+     * @param loggerName the name of the logger
+     * @param level the level of the event
+     * @return boolean false if the event must be suppressed
+     */
+    public boolean permit(String loggerName, Level level) {
+        final Integer key = level.toInt();
+        final Double ratio = samplingRatios.get(key);
+        if (ratio != null && ThreadLocalRandom.current().nextDouble() >= ratio) {
+            sampledOut.incrementAndGet();
+            return false;
+        }
+        final TokenBucket levelBucket = levelBuckets.get(key);
+        if (levelBucket != null && !levelBucket.tryAcquire()) {
+            return false;
+        }
+        if (loggerRates.isEmpty()) {
+            return true;
+        }
+        final TokenBucket loggerBucket = getLoggerBucket(loggerName);
+        return loggerBucket == UNLIMITED || loggerBucket.tryAcquire();
+    }
+
+    /**
+     * Collects the numbers of suppressed events since the previous call
+     *
+     * @return Map the number of events sampled out (under "sampled") and the
+     *  numbers of events over the rate of each level and logger
+     */
+    public Map<String, Long> drainSuppressed() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        long sampled = sampledOut.getAndSet(0);
+        if (sampled > 0) {
+            counts.put("sampled", sampled);
+        }
+        for (Map.Entry<Integer, TokenBucket> entry : levelBuckets.entrySet()) {
+            long rejected = entry.getValue().drainRejected();
+            if (rejected > 0) {
+                counts.put(Level.toLevel(entry.getKey()).toString(), rejected);
+            }
+        }
+        for (Map.Entry<String, TokenBucket> entry : loggerBuckets.entrySet()) {
+            if (entry.getValue() != UNLIMITED) {
+                long rejected = entry.getValue().drainRejected();
+                if (rejected > 0) {
+                    counts.put(entry.getKey(), rejected);
+                }
+            }
+        }
+        return counts.isEmpty() ? Collections.<String, Long>emptyMap() : counts;
+    }
+
+    private TokenBucket getLoggerBucket(String loggerName) {
+        TokenBucket bucket = loggerBuckets.get(loggerName);
+        if (bucket == null) {
+            Double rate = findRate(loggerName);
+            bucket = (rate == null) ? UNLIMITED : new TokenBucket(rate, (int) Math.ceil(rate));
+            TokenBucket existing = loggerBuckets.putIfAbsent(loggerName, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    private Double findRate(String loggerName) {
+        String name = loggerName;
+        while (name != null) {
+            Double rate = loggerRates.get(name);
+            if (rate != null) {
+                return rate;
+            }
+            int dot = name.lastIndexOf('.');
+            name = (dot > 0) ? name.substring(0, dot) : null;
+        }
+        return loggerRates.get(ROOT);
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(String.valueOf(value));
+    }
+
+    private static Level toLevel(String name) {
+        Level level = Level.toLevel(name, null);
+        if (level == null) {
+            throw new IllegalArgumentException("Unknown level: " + name);
+        }
+        return level;
+    }
+}
@@ -0,0 +1,117 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with preallocated slots.
+ *
+ * Each slot carries its own sequence number (Vyukov's bounded queue), so
+ * producers claim a slot with a single CAS on the tail counter and never
+ * allocate a node per element. Consumers may be concurrent as well, which
+ * lets producers evict the oldest element when applying a drop-oldest policy.
+ *
+ * @author drupalex
+ * @param <E> the element type
+ */
+public class RingBuffer<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    public RingBuffer(int capacity) {
+        this.capacity = roundToPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.items = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Inserts an element if there is a free slot.
+     *
+     * @param item the element to insert, must not be null
+     * @return boolean false if the buffer is full
+     */
+    public boolean offer(E item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long pos = tail.get();
+            int index = (int) pos & mask;
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(index, item);
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+            } else if (dif < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element.
+     *
+     * @return E the oldest element or null if the buffer is empty
+     */
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) pos & mask;
+            long dif = sequences.get(index) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E item = items.get(index);
+                    items.lazySet(index, null);
+                    sequences.lazySet(index, pos + capacity);
+                    return item;
+                }
+            } else if (dif < 0) {
+                return null;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Approximate number of elements, exact when producers and consumers are idle.
+     *
+     * @return int the number of queued elements
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) return 0;
+        return (size > capacity) ? capacity : (int) size;
+    }
+
+    private static int roundToPowerOfTwo(int value) {
+        if (value < 2) return 2;
+        if (value > (1 << 30)) return 1 << 30;
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Keeps the head and tail counters on separate cache lines
+     */
+    @SuppressWarnings("unused")
+    static class PaddedAtomicLong extends AtomicLong {
+        long p1, p2, p3, p4, p5, p6, p7 = 7L;
+    }
+}
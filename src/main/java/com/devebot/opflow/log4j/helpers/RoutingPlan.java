@@ -0,0 +1,159 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.log4j.Level;
+
+/**
+ * Routing key template, such as "${level}.${logger}.${identifier}", compiled
+ *  into a list of literal and variable parts.
+ *
+ * The identifier is constant and folded into the literals at compile time. A
+ * key which depends on the logger is computed once per (logger, level) and
+ * kept in a concurrent map of the loggers, holding one slot per standard
+ * level, so resolving it is a single map lookup afterwards. The keys of the
+ * custom levels and the ones beyond the capacity of the cache are computed
+ * on each call.
+ *
+ * @author drupalex
+ */
+public class RoutingPlan {
+    private static final int MAX_LOGGERS = 4096;
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR, Level.FATAL};
+    private static final String LEVEL = "level";
+    private static final String LOGGER = "logger";
+    private static final String IDENTIFIER = "identifier";
+
+    private final String template;
+    private final String[] literals;
+    private final String[] variables;
+    private final boolean byLogger;
+    private final String[] byLevel;
+    private final ConcurrentMap<String, String[]> cache;
+
+    private RoutingPlan(String template, String[] literals, String[] variables) {
+        this.template = template;
+        this.literals = literals;
+        this.variables = variables;
+        boolean _byLogger = false;
+        for (String variable : variables) {
+            _byLogger |= LOGGER.equals(variable);
+        }
+        this.byLogger = _byLogger;
+        this.byLevel = _byLogger ? null : new String[LEVELS.length];
+        this.cache = _byLogger ? new ConcurrentHashMap<String, String[]>() : null;
+    }
+
+    /**
+     * Parses a template whose variables are ${level}, ${logger} and
+     *  ${identifier}
+     *
+     * @param template the routing key template
+     * @param identifier the value of the ${identifier} variable
+     * @return RoutingPlan the compiled template
+     * @throws IllegalArgumentException if a variable is unknown or unclosed
+     */
+    public static RoutingPlan compile(String template, String identifier) {
+        final String source = (template != null) ? template : "";
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (pos < source.length()) {
+            int start = source.indexOf("${", pos);
+            if (start < 0) {
+                literal.append(source, pos, source.length());
+                break;
+            }
+            int end = source.indexOf('}', start + 2);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed variable in routing key: " + source);
+            }
+            literal.append(source, pos, start);
+            String variable = source.substring(start + 2, end).trim();
+            switch (variable) {
+                case IDENTIFIER:
+                    literal.append((identifier != null) ? identifier : "");
+                    break;
+                case LEVEL:
+                case LOGGER:
+                    literals.add(literal.toString());
+                    variables.add(variable);
+                    literal.setLength(0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown variable ${" + variable + "} in routing key: " + source);
+            }
+            pos = end + 1;
+        }
+        literals.add(literal.toString());
+        return new RoutingPlan(source, literals.toArray(new String[literals.size()]), variables.toArray(new String[variables.size()]));
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return boolean true if the key is the same for all the events
+     */
+    public boolean isStatic() {
+        return variables.length == 0;
+    }
+
+    /**
+     * Resolves the routing key of an event
+     *
+     * @param loggerName the name of the logger
+     * @param level the level of the event
+     * @return String the routing key
+     */
+    public String resolve(String loggerName, Level level) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+        final int slot = slotOf(level);
+        if (slot < 0) {
+            return build(loggerName, level);
+        }
+        String[] keys = byLevel;
+        if (byLogger) {
+            keys = cache.get(loggerName);
+            if (keys == null) {
+                if (cache.size() >= MAX_LOGGERS) {
+                    return build(loggerName, level);
+                }
+                String[] _keys = cache.putIfAbsent(loggerName, keys = new String[LEVELS.length]);
+                if (_keys != null) {
+                    keys = _keys;
+                }
+            }
+        }
+        String key = keys[slot];
+        if (key == null) {
+            // a racing thread may compute the same immutable string
+            keys[slot] = key = build(loggerName, level);
+        }
+        return key;
+    }
+
+    private String build(String loggerName, Level level) {
+        StringBuilder key = new StringBuilder(template.length() + 32);
+        for (int i = 0; i < variables.length; i++) {
+            key.append(literals[i]);
+            key.append(LEVEL.equals(variables[i]) ? level.toString() : loggerName);
+        }
+        return key.append(literals[variables.length]).toString();
+    }
+
+    private static int slotOf(Level level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,71 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells, each one on its own cache line, so that
+ * the threads which increment it concurrently rarely hit the same cell.
+ *
+ * The cell of a thread is chosen by its id. Reading the value sums all the
+ * cells, which is much slower than an increment: it is meant for counters
+ * updated on the hot path and read only by the monitoring.
+ *
+ * @author drupalex
+ */
+public class StripedCounter {
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 64;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes the number of cells, rounded up to a power of two
+     */
+    public StripedCounter(int stripes) {
+        int size = Math.min(MAX_STRIPES, (stripes < 2) ? 1 : Integer.highestOneBit(stripes - 1) << 1);
+        this.cells = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(stripe(mask) * PADDING, delta);
+    }
+
+    /**
+     * @return long the sum of the cells, not an atomic snapshot
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i <= mask; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    /**
+     * Picks the stripe of the current thread
+     *
+     * @param mask the number of stripes minus one, a power of two minus one
+     * @return int the index of the stripe
+     */
+    static int stripe(int mask) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,58 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm: the
+ *  whole state is the theoretical arrival time of the next event, updated
+ *  with a single CAS.
+ *
+ * @author drupalex
+ */
+public class TokenBucket {
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong arrival;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param ratePerSecond the number of events allowed per second
+     * @param burst the number of events allowed at once
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.interval = Math.max(1L, (long) (1e9 / ratePerSecond));
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+        this.arrival = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if there is one left at the given time
+     *
+     * @param now the current System.nanoTime()
+     * @return boolean false if the rate is exceeded
+     */
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long current = arrival.get();
+            long base = (current - now < 0) ? now : current;
+            if (base - now > tolerance) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (arrival.compareAndSet(current, base + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return long the number of rejected events since the previous call
+     */
+    public long drainRejected() {
+        return rejected.getAndSet(0);
+    }
+}
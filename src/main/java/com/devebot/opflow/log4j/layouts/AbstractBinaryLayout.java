@@ -0,0 +1,34 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import java.nio.charset.Charset;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * The fields of the LogstashLayout, with the same depth levels and
+ *  metadata, encoded in a binary format given by the writer of the subclass
+ *
+ * @author acegik
+ */
+public abstract class AbstractBinaryLayout extends LogstashLayout {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    public AbstractBinaryLayout() {
+        super();
+    }
+
+    /**
+     * Maps each byte of the payload to one char, so that the appenders
+     *  which only handle strings get the bytes back with ISO-8859-1
+     *
+     * @param loggingEvent the current logging event object
+     * @return String the payload, one char per byte
+     */
+    @Override
+    public String format(LoggingEvent loggingEvent) {
+        BytesBuilder out = new BytesBuilder();
+        format(loggingEvent, out);
+        return out.toString(ISO_8859_1);
+    }
+}
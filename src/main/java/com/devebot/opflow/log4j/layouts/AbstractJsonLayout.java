@@ -1,16 +1,38 @@
 package com.devebot.opflow.log4j.layouts;
 
+import com.devebot.opflow.log4j.helpers.EventSnapshot;
+import com.devebot.opflow.log4j.utils.BytesBuilder;
 import com.devebot.opflow.log4j.utils.JsonTool;
+import com.devebot.opflow.log4j.utils.JsonWriter;
+import com.devebot.opflow.log4j.utils.StructWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import org.apache.log4j.Layout;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
  *
  * @author acegik
  */
-public abstract class AbstractJsonLayout extends Layout {
+public abstract class AbstractJsonLayout extends Layout implements ByteLayout {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ThreadLocal<StructWriter> writers = new ThreadLocal<StructWriter>() {
+        @Override
+        protected StructWriter initialValue() {
+            return createWriter();
+        }
+    };
+
+    private final ThrowableRenderer throwableRenderer = new ThrowableRenderer();
+    private volatile byte[] metadataFragment;
     private Map<String, Object> metadata;
     protected int depth = 0;
     
@@ -20,10 +42,109 @@ public abstract class AbstractJsonLayout extends Layout {
     
     public void setDepth(int depth) {
         this.depth = depth;
+        compileMetadata();
     }
     
+    /**
+     * Limits the number of frames of the stack trace (0 means no limit)
+     *
+     * @param maxStackFrames the maximum number of frames
+     */
+    public void setMaxStackFrames(int maxStackFrames) {
+        throwableRenderer.setMaxStackFrames(maxStackFrames);
+    }
+
+    /**
+     * Renders that many causes and suppressed exceptions (0 means none)
+     *
+     * @param maxCauseDepth the maximum number of causes
+     */
+    public void setMaxCauseDepth(int maxCauseDepth) {
+        throwableRenderer.setMaxCauseDepth(maxCauseDepth);
+    }
+
+    /**
+     * Limits the number of frames of each cause (0 means no limit)
+     *
+     * @param maxCauseFrames the maximum number of frames
+     */
+    public void setMaxCauseFrames(int maxCauseFrames) {
+        throwableRenderer.setMaxCauseFrames(maxCauseFrames);
+    }
+
+    /**
+     * Sets the number of encoded stack traces kept by fingerprint
+     *
+     * @param throwableCacheSize the capacity of the LRU cache
+     */
+    public void setThrowableCacheSize(int throwableCacheSize) {
+        throwableRenderer.setCacheSize(throwableCacheSize);
+    }
+
+    /**
+     * Sends a Throwable recently rendered as its fingerprint only
+     *
+     * @param compactRepeatedThrowables enabled if true
+     */
+    public void setCompactRepeatedThrowables(boolean compactRepeatedThrowables) {
+        throwableRenderer.setCompactRepeats(compactRepeatedThrowables);
+    }
+
+    /**
+     * Compiles the metadata once into a pre-encoded fragment which is spliced
+     *  into every payload, so later changes to the map are not picked up
+     *  until it is set again. The entries named after a field of the event
+     *  are left out, the event field is kept.
+     *
+     * @param metadata the fields appended to every event
+     */
     public void setMetadata(Map<String, Object> metadata) {
-        this.metadata = metadata;
+        this.metadata = (metadata != null) ? new LinkedHashMap<>(metadata) : null;
+        compileMetadata();
+    }
+
+    private void compileMetadata() {
+        Map<String, Object> fields = null;
+        if (metadata != null) {
+            fields = new LinkedHashMap<>(metadata);
+            for (String name : getReservedFields()) {
+                if (fields.containsKey(name)) {
+                    fields.remove(name);
+                    LogLog.warn("The metadata field [" + name + "] is ignored, the events have a field of that name");
+                }
+            }
+        }
+        this.metadataFragment = createWriter().compileFields(fields);
+    }
+
+    /**
+     * The names of the top-level fields which may be written for an event,
+     *  and which the metadata therefore cannot use. Subclasses add the names
+     *  of their basic fields.
+     *
+     * @return Set the reserved field names
+     */
+    protected Set<String> getReservedFields() {
+        return new HashSet<>(Arrays.asList("throwable", "stackTrace", "causes", "suppressed",
+                "repeatCount", "firstSeen", "lastSeen"));
+    }
+
+    /**
+     * Creates the writer of the payload encoding, JSON by default. The
+     *  binary layouts encode the same fields with their own writer.
+     *
+     * @return StructWriter a new writer
+     */
+    protected StructWriter createWriter() {
+        return new JsonWriter();
+    }
+
+    /**
+     * @return String the MIME type of the payload
+     */
+    @Override
+    public String getContentType() {
+        return "text/json";
     }
     
     /**
@@ -34,13 +155,125 @@ public abstract class AbstractJsonLayout extends Layout {
      */
     @Override
     public String format(LoggingEvent loggingEvent) {
+        BytesBuilder out = new BytesBuilder();
+        format(loggingEvent, out);
+        return out.toString(UTF_8);
+    }
+
+    /**
+     * encode a given LoggingEvent to UTF-8 JSON at the end of the buffer
+     *
+     * @param loggingEvent the current logging event object
+     * @param out the target buffer
+     */
+    @Override
+    public void format(LoggingEvent loggingEvent, BytesBuilder out) {
+        format(new EventSnapshot().capture(loggingEvent, requiresLocation()), out);
+    }
+
+    /**
+     * encode a given EventSnapshot to UTF-8 JSON at the end of the buffer
+     *
+     * @param snapshot the captured event fields
+     * @param out the target buffer
+     */
+    @Override
+    public void format(EventSnapshot snapshot, BytesBuilder out) {
+        StructWriter writer = writers.get().reset(out);
+        writer.beginObject();
+        writeBasicFields(writer, snapshot);
+        writeThrowableFields(writer, snapshot);
+        writeRepeatFields(writer, snapshot);
+        writer.rawFields(metadataFragment);
+        writer.endObject();
+        writer.reset(null);
+    }
+
+    /**
+     * The basic fields of this layout do not include the caller location
+     *
+     * @return boolean true if the location is rendered
+     */
+    @Override
+    public boolean requiresLocation() {
+        return false;
+    }
+
+    /**
+     * encode a given LoggingEvent to UTF-8 JSON
+     *
+     * @param loggingEvent the current logging event object
+     * @return byte[] representation of LoggingEvent
+     */
+    public byte[] toByteArray(LoggingEvent loggingEvent) {
+        BytesBuilder out = new BytesBuilder();
+        format(loggingEvent, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * encode a given LoggingEvent to UTF-8 JSON
+     *
+     * @param loggingEvent the current logging event object
+     * @return ByteBuffer representation of LoggingEvent
+     */
+    public ByteBuffer toByteBuffer(LoggingEvent loggingEvent) {
+        BytesBuilder out = new BytesBuilder();
+        format(loggingEvent, out);
+        return out.toByteBuffer();
+    }
+
+    /**
+     * Writes basic LoggingEvent properties as JSON fields. The default
+     *  implementation collects them through renderBasicFields.
+     *
+     * @param writer the structured writer object
+     * @param event the captured event fields
+     */
+    protected void writeBasicFields(StructWriter writer, EventSnapshot event) {
         JsonTool.Builder builder = JsonTool.newBuilder();
-        renderBasicFields(builder, loggingEvent);
-        renderThrowableFields(builder, loggingEvent);
-        if (metadata != null) {
-            builder.putAll(metadata);
+        renderBasicFields(builder, event.toLoggingEvent());
+        writer.fields(builder.toMap());
+    }
+
+    /**
+     * Writes LoggingEvent Throwable as JSON fields. The default
+     *  implementation collects them through renderThrowableFields.
+     *
+     * @param writer the structured writer object
+     * @param event the captured event fields
+     */
+    protected void writeThrowableFields(StructWriter writer, EventSnapshot event) {
+        JsonTool.Builder builder = JsonTool.newBuilder();
+        renderThrowableFields(builder, event.toLoggingEvent());
+        writer.fields(builder.toMap());
+    }
+
+    /**
+     * Writes the repeatCount, firstSeen and lastSeen fields of an event
+     *  which sums up the repeats of an aggregated one
+     *
+     * @param writer the structured writer object
+     * @param event the captured event fields
+     */
+    protected void writeRepeatFields(StructWriter writer, EventSnapshot event) {
+        if (event.getRepeatCount() > 0) {
+            writer.name("repeatCount").value(event.getRepeatCount());
+            writer.name("firstSeen").value(event.getFirstSeen());
+            writer.name("lastSeen").value(event.getLastSeen());
+        }
+    }
+
+    /**
+     * Writes the Throwable of a LoggingEvent with its stack trace
+     *
+     * @param writer the structured writer object
+     * @param event the captured event fields
+     */
+    protected void writeThrowable(StructWriter writer, EventSnapshot event) {
+        if (event.getThrowable() != null) {
+            throwableRenderer.render(writer, event.getThrowable());
         }
-        return builder.toString();
     }
 
     /**
@@ -48,16 +281,22 @@ public abstract class AbstractJsonLayout extends Layout {
      *
      * @param builder the JSON builder object
      * @param event the current logging event object
+     * @deprecated superseded by the streaming {@link #writeBasicFields}
      */
-    protected abstract void renderBasicFields(JsonTool.Builder builder, LoggingEvent event);
+    @Deprecated
+    protected void renderBasicFields(JsonTool.Builder builder, LoggingEvent event) {
+    }
 
     /**
      * Converts LoggingEvent Throwable to JSON object
      *
      * @param builder the JSON builder object
      * @param event the current logging event object
+     * @deprecated superseded by the streaming {@link #writeThrowableFields}
      */
-    protected abstract void renderThrowableFields(JsonTool.Builder builder, LoggingEvent event);
+    @Deprecated
+    protected void renderThrowableFields(JsonTool.Builder builder, LoggingEvent event) {
+    }
     
     /**
      * Just fulfilling the interface/abstract class requirements
@@ -0,0 +1,36 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.helpers.EventSnapshot;
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Layout that encodes a LoggingEvent straight into a byte buffer
+ *
+ * @author acegik
+ */
+public interface ByteLayout {
+
+    /**
+     * encode a given LoggingEvent at the end of the buffer
+     *
+     * @param loggingEvent the current logging event object
+     * @param out the target buffer
+     */
+    void format(LoggingEvent loggingEvent, BytesBuilder out);
+
+    /**
+     * encode a snapshot captured from a LoggingEvent at the end of the buffer
+     *
+     * @param snapshot the captured event fields
+     * @param out the target buffer
+     */
+    void format(EventSnapshot snapshot, BytesBuilder out);
+
+    /**
+     * Tells whether the caller location must be captured with the snapshot
+     *
+     * @return boolean true if the layout renders the location
+     */
+    boolean requiresLocation();
+}
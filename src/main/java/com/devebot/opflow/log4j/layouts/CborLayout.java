@@ -0,0 +1,27 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.utils.CborWriter;
+import com.devebot.opflow.log4j.utils.StructWriter;
+
+/**
+ * The fields of the LogstashLayout, with the same depth levels and
+ *  metadata, encoded in CBOR
+ *
+ * @author acegik
+ */
+public class CborLayout extends AbstractBinaryLayout {
+
+    public CborLayout() {
+        super();
+    }
+
+    @Override
+    protected StructWriter createWriter() {
+        return new CborWriter();
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/cbor";
+    }
+}
@@ -1,67 +1,83 @@
 package com.devebot.opflow.log4j.layouts;
 
-import com.devebot.opflow.log4j.utils.JsonTool;
-import com.devebot.opflow.log4j.utils.TimeUtil;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import com.devebot.opflow.log4j.helpers.EventSnapshot;
+import com.devebot.opflow.log4j.utils.IdGenerator;
+import com.devebot.opflow.log4j.utils.StructWriter;
+import java.util.Arrays;
+import java.util.Set;
 import org.apache.log4j.spi.LocationInfo;
-import org.apache.log4j.spi.LoggingEvent;
-import org.apache.log4j.spi.ThrowableInformation;
 
 public class LogstashLayout extends AbstractJsonLayout {
 
+    private String logIdGenerator = "uuid";
+    private IdGenerator idGenerator = IdGenerator.forName(logIdGenerator);
+
     public LogstashLayout() {
         super();
     }
 
+    public String getLogIdGenerator() {
+        return logIdGenerator;
+    }
+
+    /**
+     * Selects the generator of the logId field: "uuid" (random, default),
+     *  "uuid7" (time-ordered, no shared state) or a class name
+     *
+     * @param logIdGenerator the name of the generator
+     */
+    public void setLogIdGenerator(String logIdGenerator) {
+        this.idGenerator = IdGenerator.forName(logIdGenerator);
+        this.logIdGenerator = logIdGenerator;
+    }
+
     @Override
-    protected void renderBasicFields(JsonTool.Builder builder, LoggingEvent event) {
-        builder.put("logId", UUID.randomUUID().toString());
-        builder.put("logTime", event.getTimeStamp());
+    public boolean requiresLocation() {
+        return this.depth >= 2;
+    }
+
+    @Override
+    protected Set<String> getReservedFields() {
+        Set<String> names = super.getReservedFields();
+        names.addAll(Arrays.asList("logId", "logTime", "level", "message", "loggerName"));
         if (this.depth >= 1) {
-            builder.put("timestamp", TimeUtil.toISO8601UTC(event.getTimeStamp()));
+            names.addAll(Arrays.asList("timestamp", "threadName"));
+        }
+        if (this.depth >= 2) {
+            names.addAll(Arrays.asList("className", "methodName", "lineNumber"));
+        }
+        if (this.depth >= 3) {
+            names.add("fileName");
         }
-        builder.put("level", event.getLevel().toString());
-        builder.put("message", event.getMessage());
-        builder.put("loggerName", event.getLoggerName());
+        return names;
+    }
+
+    @Override
+    protected void writeBasicFields(StructWriter writer, EventSnapshot event) {
+        writer.name("logId").idValue(idGenerator);
+        writer.name("logTime").value(event.getTimeStamp());
         if (this.depth >= 1) {
-            builder.put("threadName", event.getThreadName());
+            writer.name("timestamp").timestampValue(event.getTimeStamp());
         }
-        if (this.depth >= 2) {
-            LocationInfo li = event.getLocationInformation();
-            builder.put("className", li.getClassName());
-            builder.put("methodName", li.getMethodName());
-            builder.put("lineNumber", li.getLineNumber());
+        writer.name("level").value(event.getLevel().toString());
+        writer.name("message").value(event.getMessage());
+        writer.name("loggerName").value(event.getLoggerName());
+        if (this.depth >= 1) {
+            writer.name("threadName").value(event.getThreadName());
+        }
+        LocationInfo li = event.getLocationInfo();
+        if (this.depth >= 2 && li != null) {
+            writer.name("className").value(li.getClassName());
+            writer.name("methodName").value(li.getMethodName());
+            writer.name("lineNumber").value(li.getLineNumber());
             if (this.depth >= 3) {
-                builder.put("fileName", li.getFileName());
+                writer.name("fileName").value(li.getFileName());
             }
         }
     }
 
     @Override
-    protected void renderThrowableFields(JsonTool.Builder builder, LoggingEvent event) {
-        ThrowableInformation info = event.getThrowableInformation();
-        if (info != null) {
-            final Throwable t = info.getThrowable();
-
-            Map<String, Object> throwable = new LinkedHashMap<>();
-            throwable.put("message", t.getMessage());
-            throwable.put("className", t.getClass().getCanonicalName());
-            builder.put("throwable", throwable);
-
-            List<Map<String, Object>> traceObjects = new ArrayList<>();
-            for (StackTraceElement ste : t.getStackTrace()) {
-                Map<String, Object> element = new LinkedHashMap<>();
-                element.put("class", ste.getClassName());
-                element.put("method", ste.getMethodName());
-                element.put("line", ste.getLineNumber());
-                element.put("file", ste.getFileName());
-                traceObjects.add(element);
-            }
-            builder.put("stackTrace", traceObjects);
-        }
+    protected void writeThrowableFields(StructWriter writer, EventSnapshot event) {
+        writeThrowable(writer, event);
     }
 }
@@ -0,0 +1,27 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.utils.MessagePackWriter;
+import com.devebot.opflow.log4j.utils.StructWriter;
+
+/**
+ * The fields of the LogstashLayout, with the same depth levels and
+ *  metadata, encoded in MessagePack
+ *
+ * @author acegik
+ */
+public class MessagePackLayout extends AbstractBinaryLayout {
+
+    public MessagePackLayout() {
+        super();
+    }
+
+    @Override
+    protected StructWriter createWriter() {
+        return new MessagePackWriter();
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/msgpack";
+    }
+}
@@ -1,13 +1,9 @@
 package com.devebot.opflow.log4j.layouts;
 
-import com.devebot.opflow.log4j.utils.JsonTool;
-import org.apache.log4j.spi.LoggingEvent;
-import org.apache.log4j.spi.ThrowableInformation;
-
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import com.devebot.opflow.log4j.helpers.EventSnapshot;
+import com.devebot.opflow.log4j.utils.StructWriter;
+import java.util.Arrays;
+import java.util.Set;
 
 public class SimpleJsonLayout extends AbstractJsonLayout {
 
@@ -16,35 +12,23 @@ public class SimpleJsonLayout extends AbstractJsonLayout {
     }
 
     @Override
-    protected void renderBasicFields(JsonTool.Builder builder, LoggingEvent event) {
-        builder.put("timestamp", event.getTimeStamp());
-        builder.put("level", event.getLevel().toString());
-        builder.put("message", event.getMessage());
-        builder.put("loggerName", event.getLoggerName());
-        builder.put("threadName", event.getThreadName());
+    protected Set<String> getReservedFields() {
+        Set<String> names = super.getReservedFields();
+        names.addAll(Arrays.asList("timestamp", "level", "message", "loggerName", "threadName"));
+        return names;
     }
 
     @Override
-    protected void renderThrowableFields(JsonTool.Builder builder, LoggingEvent event) {
-        ThrowableInformation info = event.getThrowableInformation();
-        if (info != null) {
-            final Throwable t = info.getThrowable();
-
-            Map<String, Object> throwable = new LinkedHashMap<>();
-            throwable.put("message", t.getMessage());
-            throwable.put("className", t.getClass().getCanonicalName());
-            builder.put("throwable", throwable);
+    protected void writeBasicFields(StructWriter writer, EventSnapshot event) {
+        writer.name("timestamp").value(event.getTimeStamp());
+        writer.name("level").value(event.getLevel().toString());
+        writer.name("message").value(event.getMessage());
+        writer.name("loggerName").value(event.getLoggerName());
+        writer.name("threadName").value(event.getThreadName());
+    }
 
-            List<Map<String, Object>> traceObjects = new ArrayList<>();
-            for (StackTraceElement ste : t.getStackTrace()) {
-                Map<String, Object> element = new LinkedHashMap<>();
-                element.put("class", ste.getClassName());
-                element.put("method", ste.getMethodName());
-                element.put("line", ste.getLineNumber());
-                element.put("file", ste.getFileName());
-                traceObjects.add(element);
-            }
-            builder.put("stackTrace", traceObjects);
-        }
+    @Override
+    protected void writeThrowableFields(StructWriter writer, EventSnapshot event) {
+        writeThrowable(writer, event);
     }
 }
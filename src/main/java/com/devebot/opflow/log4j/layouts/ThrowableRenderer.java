@@ -0,0 +1,218 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import com.devebot.opflow.log4j.utils.LruCache;
+import com.devebot.opflow.log4j.utils.StructWriter;
+
+/**
+ * Renders a Throwable with its stack trace, its causes and its suppressed
+ *  exceptions.
+ *
+ * A Throwable is fingerprinted by its class and its frames (including the
+ * rendered causes and suppressed exceptions). The encoded stack traces are
+ * kept in a bounded LRU cache under that fingerprint, so an exception
+ * logged again and again is only encoded once; the messages are always
+ * written from the live instance.
+ *
+ * @author acegik
+ */
+public class ThrowableRenderer {
+
+    private int maxStackFrames = 0;
+    private int maxCauseDepth = 0;
+    private int maxCauseFrames = 0;
+    private boolean compactRepeats = false;
+    private volatile LruCache<Long, Fragments> cache = new LruCache<>(256);
+
+    public void setMaxStackFrames(int maxStackFrames) {
+        this.maxStackFrames = maxStackFrames;
+        cache.clear();
+    }
+
+    public void setMaxCauseDepth(int maxCauseDepth) {
+        this.maxCauseDepth = maxCauseDepth;
+        cache.clear();
+    }
+
+    public void setMaxCauseFrames(int maxCauseFrames) {
+        this.maxCauseFrames = maxCauseFrames;
+        cache.clear();
+    }
+
+    public void setCompactRepeats(boolean compactRepeats) {
+        this.compactRepeats = compactRepeats;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cache = new LruCache<>(Math.max(1, cacheSize));
+    }
+
+    /**
+     * Writes the "throwable", "stackTrace" and, if enabled, the "causes" and
+     *  "suppressed" fields
+     *
+     * @param writer the structured writer object
+     * @param t the Throwable
+     */
+    public void render(StructWriter writer, Throwable t) {
+        final StackTraceElement[] frames = t.getStackTrace();
+        final Throwable[] suppressed = (maxCauseDepth > 0) ? t.getSuppressed() : null;
+        final long fingerprint = fingerprint(t, frames, suppressed);
+
+        final int chainLength = chainLength(t, suppressed);
+
+        Fragments fragments = cache.get(fingerprint);
+        boolean repeated = fragments != null && fragments.matches(t, frames, chainLength);
+        if (!repeated) {
+            fragments = encode(writer.newWriter(), t, frames, suppressed, chainLength, fingerprint);
+            cache.put(fingerprint, fragments);
+        }
+
+        writer.name("throwable").beginObject()
+                .name("message").value(t.getMessage())
+                .name("className").value(t.getClass().getCanonicalName())
+                .name("fingerprint").value(fragments.id);
+        if (repeated && compactRepeats) {
+            writer.name("repeated").value(true).endObject();
+            return;
+        }
+        writeOmittedFrames(writer, frames.length, maxStackFrames);
+        writer.endObject();
+        writer.name("stackTrace").rawValue(fragments.stackTraces[0]);
+
+        if (maxCauseDepth > 0) {
+            int index = 1;
+            Throwable cause = t.getCause();
+            if (cause != null) {
+                writer.name("causes").beginArray();
+                for (int depth = 0; cause != null && depth < maxCauseDepth; depth++, cause = cause.getCause()) {
+                    writeNested(writer, cause, fragments.stackTraces[index++]);
+                }
+                writer.endArray();
+            }
+            if (suppressed.length > 0) {
+                writer.name("suppressed").beginArray();
+                for (int i = 0; i < suppressed.length && i < maxCauseDepth; i++) {
+                    writeNested(writer, suppressed[i], fragments.stackTraces[index++]);
+                }
+                writer.endArray();
+            }
+        }
+    }
+
+    private void writeNested(StructWriter writer, Throwable t, byte[] stackTrace) {
+        writer.beginObject()
+                .name("message").value(t.getMessage())
+                .name("className").value(t.getClass().getCanonicalName());
+        writeOmittedFrames(writer, t.getStackTrace().length, maxCauseFrames);
+        writer.name("stackTrace").rawValue(stackTrace);
+        writer.endObject();
+    }
+
+    private static void writeOmittedFrames(StructWriter writer, int frameCount, int limit) {
+        if (limit > 0 && frameCount > limit) {
+            writer.name("omittedFrames").value(frameCount - limit);
+        }
+    }
+
+    /**
+     * Counts the Throwable itself plus its rendered causes and suppressed
+     */
+    private int chainLength(Throwable t, Throwable[] suppressed) {
+        int count = 1;
+        if (maxCauseDepth > 0) {
+            Throwable cause = t.getCause();
+            for (int depth = 0; cause != null && depth < maxCauseDepth; depth++, cause = cause.getCause()) {
+                count++;
+            }
+            count += Math.min(suppressed.length, maxCauseDepth);
+        }
+        return count;
+    }
+
+    private Fragments encode(StructWriter writer, Throwable t, StackTraceElement[] frames, Throwable[] suppressed, int chainLength, long fingerprint) {
+        byte[][] stackTraces = new byte[chainLength][];
+        BytesBuilder buffer = new BytesBuilder(1024);
+        stackTraces[0] = encodeFrames(writer, buffer, frames, maxStackFrames);
+        if (maxCauseDepth > 0) {
+            int index = 1;
+            Throwable cause = t.getCause();
+            for (int depth = 0; cause != null && depth < maxCauseDepth; depth++, cause = cause.getCause()) {
+                stackTraces[index++] = encodeFrames(writer, buffer, cause.getStackTrace(), maxCauseFrames);
+            }
+            for (int i = 0; i < suppressed.length && i < maxCauseDepth; i++) {
+                stackTraces[index++] = encodeFrames(writer, buffer, suppressed[i].getStackTrace(), maxCauseFrames);
+            }
+        }
+        return new Fragments(String.format("%016x", fingerprint), t.getClass().getName(), frames.length, stackTraces);
+    }
+
+    private static byte[] encodeFrames(StructWriter writer, BytesBuilder buffer, StackTraceElement[] frames, int limit) {
+        int count = (limit > 0) ? Math.min(limit, frames.length) : frames.length;
+        buffer.reset();
+        writer.reset(buffer).beginArray();
+        for (int i = 0; i < count; i++) {
+            StackTraceElement ste = frames[i];
+            writer.beginObject()
+                    .name("class").value(ste.getClassName())
+                    .name("method").value(ste.getMethodName())
+                    .name("line").value(ste.getLineNumber())
+                    .name("file").value(ste.getFileName())
+                    .endObject();
+        }
+        writer.endArray();
+        return buffer.toByteArray();
+    }
+
+    private long fingerprint(Throwable t, StackTraceElement[] frames, Throwable[] suppressed) {
+        long hash = hash(0xcbf29ce484222325L, t, frames, maxStackFrames);
+        if (maxCauseDepth > 0) {
+            Throwable cause = t.getCause();
+            for (int depth = 0; cause != null && depth < maxCauseDepth; depth++, cause = cause.getCause()) {
+                hash = hash(hash, cause, cause.getStackTrace(), maxCauseFrames);
+            }
+            for (int i = 0; i < suppressed.length && i < maxCauseDepth; i++) {
+                hash = hash(hash, suppressed[i], suppressed[i].getStackTrace(), maxCauseFrames);
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, Throwable t, StackTraceElement[] frames, int limit) {
+        int count = (limit > 0) ? Math.min(limit, frames.length) : frames.length;
+        hash = mix(hash, t.getClass().getName().hashCode());
+        hash = mix(hash, frames.length);
+        for (int i = 0; i < count; i++) {
+            StackTraceElement ste = frames[i];
+            hash = mix(hash, ste.getClassName().hashCode());
+            hash = mix(hash, ste.getMethodName().hashCode());
+            hash = mix(hash, ste.getLineNumber());
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static final class Fragments {
+        final String id;
+        final String className;
+        final int frameCount;
+        final byte[][] stackTraces;
+
+        Fragments(String id, String className, int frameCount, byte[][] stackTraces) {
+            this.id = id;
+            this.className = className;
+            this.frameCount = frameCount;
+            this.stackTraces = stackTraces;
+        }
+
+        boolean matches(Throwable t, StackTraceElement[] frames, int chainLength) {
+            return frameCount == frames.length && stackTraces.length == chainLength
+                    && className.equals(t.getClass().getName());
+        }
+    }
+}
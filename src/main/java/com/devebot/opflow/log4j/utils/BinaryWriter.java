@@ -0,0 +1,254 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Common part of the binary writers: the objects and arrays are opened
+ *  before their number of entries is known, so each encoding either patches
+ *  that number at the end or uses indefinite-length containers.
+ *
+ * @author drupalex
+ */
+public abstract class BinaryWriter extends StructWriter {
+    private int[] marks = new int[16];
+    private int[] counts = new int[16];
+    private int depth = 0;
+    private String deferredName;
+    protected BytesBuilder out;
+
+    @Override
+    public BinaryWriter reset(BytesBuilder out) {
+        this.out = out;
+        this.depth = 0;
+        this.deferredName = null;
+        return this;
+    }
+
+    @Override
+    public BytesBuilder getOutput() {
+        return out;
+    }
+
+    @Override
+    public BinaryWriter beginObject() {
+        beforeValue();
+        push();
+        writeMapStart();
+        return this;
+    }
+
+    @Override
+    public BinaryWriter endObject() {
+        deferredName = null;
+        writeMapEnd(marks[depth], counts[depth]);
+        depth--;
+        return this;
+    }
+
+    @Override
+    public BinaryWriter beginArray() {
+        beforeValue();
+        push();
+        writeArrayStart();
+        return this;
+    }
+
+    @Override
+    public BinaryWriter endArray() {
+        writeArrayEnd(marks[depth], counts[depth]);
+        depth--;
+        return this;
+    }
+
+    @Override
+    public BinaryWriter name(String name) {
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public BinaryWriter nullValue() {
+        if (deferredName != null) {
+            deferredName = null;
+            return this;
+        }
+        beforeValue();
+        writeNil();
+        return this;
+    }
+
+    @Override
+    public BinaryWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter value(boolean value) {
+        beforeValue();
+        writeBoolean(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter value(double value) {
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter timestampValue(long time) {
+        beforeValue();
+        int mark = beginShortString();
+        TimeUtil.writeISO8601UTC(time, out);
+        endShortString(mark);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter idValue(IdGenerator generator) {
+        beforeValue();
+        int mark = beginShortString();
+        generator.writeId(out);
+        endShortString(mark);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter rawValue(byte[] fragment) {
+        beforeValue();
+        out.write(fragment, 0, fragment.length);
+        return this;
+    }
+
+    /**
+     * The fragment starts with the number of fields as a big-endian int
+     */
+    @Override
+    public BinaryWriter rawFields(byte[] fragment) {
+        if (fragment == null || fragment.length <= 4) {
+            return this;
+        }
+        counts[depth] += ((fragment[0] & 0xff) << 24) | ((fragment[1] & 0xff) << 16) | ((fragment[2] & 0xff) << 8) | (fragment[3] & 0xff);
+        out.write(fragment, 4, fragment.length - 4);
+        return this;
+    }
+
+    @Override
+    public byte[] compileFields(Map<?, ?> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        BytesBuilder buffer = new BytesBuilder();
+        BinaryWriter writer = (BinaryWriter) newWriter().reset(buffer);
+        writer.beginObject();
+        int start = buffer.size();
+        writer.fields(fields);
+        int count = writer.counts[writer.depth];
+        if (count == 0) {
+            return null;
+        }
+        BytesBuilder fragment = new BytesBuilder(buffer.size() - start + 4);
+        fragment.writeInt(count);
+        fragment.write(buffer.array(), start, buffer.size() - start);
+        return fragment.toByteArray();
+    }
+
+    @Override
+    public BinaryWriter value(Object value) {
+        super.value(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter fields(Map<?, ?> fields) {
+        super.fields(fields);
+        return this;
+    }
+
+    protected abstract void writeMapStart();
+
+    protected abstract void writeMapEnd(int mark, int count);
+
+    protected abstract void writeArrayStart();
+
+    protected abstract void writeArrayEnd(int mark, int count);
+
+    protected abstract void writeNil();
+
+    protected abstract void writeBoolean(boolean value);
+
+    protected abstract void writeLong(long value);
+
+    protected abstract void writeDouble(double value);
+
+    protected abstract void writeStringHeader(int length);
+
+    /**
+     * Overwrites the two bytes reserved for the header of a string shorter
+     *  than 256 bytes
+     */
+    protected abstract void patchShortStringHeader(byte[] buf, int pos, int length);
+
+    protected void writeString(String value) {
+        writeStringHeader(utf8Length(value));
+        writeUtf8(out, value);
+    }
+
+    protected void writeLongBE(long value) {
+        out.writeInt((int) (value >>> 32));
+        out.writeInt((int) value);
+    }
+
+    private int beginShortString() {
+        int mark = out.size();
+        out.write(0);
+        out.write(0);
+        return mark;
+    }
+
+    private void endShortString(int mark) {
+        int length = out.size() - mark - 2;
+        if (length < 256) {
+            patchShortStringHeader(out.array(), mark, length);
+            return;
+        }
+        byte[] content = out.toByteArray(mark + 2);
+        out.truncate(mark);
+        writeStringHeader(length);
+        out.write(content, 0, content.length);
+    }
+
+    private void push() {
+        depth++;
+        if (depth == marks.length) {
+            marks = Arrays.copyOf(marks, depth << 1);
+            counts = Arrays.copyOf(counts, depth << 1);
+        }
+        marks[depth] = out.size();
+        counts[depth] = 0;
+    }
+
+    private void beforeValue() {
+        if (depth > 0) {
+            counts[depth]++;
+        }
+        if (deferredName != null) {
+            writeString(deferredName);
+            deferredName = null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Growable, reusable byte buffer: an unsynchronized ByteArrayOutputStream
+ *  that exposes its content without copying
+ *
+ * @author drupalex
+ */
+public class BytesBuilder extends OutputStream {
+    private byte[] buf;
+    private int count;
+
+    public BytesBuilder() {
+        this(256);
+    }
+
+    public BytesBuilder(int capacity) {
+        this.buf = new byte[Math.max(16, capacity)];
+    }
+
+    @Override
+    public void write(int b) {
+        if (count == buf.length) {
+            grow(count + 1);
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Makes room for the given number of bytes
+     * 
+     * @param extra the number of bytes about to be written
+     */
+    public void ensureCapacity(int extra) {
+        if (count + extra > buf.length) {
+            grow(count + extra);
+        }
+    }
+
+    /**
+     * Counts the bytes which have been written straight into the backing
+     *  array, after a call to {@link #ensureCapacity(int)}
+     * 
+     * @param written the number of bytes
+     */
+    public void advance(int written) {
+        count += written;
+    }
+
+    /**
+     * Appends a big-endian int
+     * 
+     * @param value the int value
+     */
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        setInt(count, value);
+        count += 4;
+    }
+
+    /**
+     * Overwrites a big-endian int which has been written before
+     * 
+     * @param pos the position of the int
+     * @param value the int value
+     */
+    public void setInt(int pos, int value) {
+        buf[pos] = (byte) (value >>> 24);
+        buf[pos + 1] = (byte) (value >>> 16);
+        buf[pos + 2] = (byte) (value >>> 8);
+        buf[pos + 3] = (byte) value;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Drops the bytes written after the given position
+     * 
+     * @param size the new size
+     */
+    public void truncate(int size) {
+        if (size >= 0 && size < count) {
+            count = size;
+        }
+    }
+
+    /**
+     * @return byte[] the backing array, valid up to {@link #size()}
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    public byte[] toByteArray(int from) {
+        return Arrays.copyOfRange(buf, from, count);
+    }
+
+    /**
+     * @return ByteBuffer a read-only view of the content, without copying
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+    }
+
+    public String toString(Charset charset) {
+        return new String(buf, 0, count, charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(Charset.forName("UTF-8"));
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(buf.length << 1, minCapacity);
+        buf = Arrays.copyOf(buf, capacity);
+    }
+}
@@ -0,0 +1,102 @@
+package com.devebot.opflow.log4j.utils;
+
+/**
+ * Streaming CBOR (RFC 7049) writer. The maps and arrays are written with
+ *  indefinite lengths and closed by a break code.
+ *
+ * @author drupalex
+ */
+public class CborWriter extends BinaryWriter {
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+
+    public CborWriter() {
+        this(null);
+    }
+
+    public CborWriter(BytesBuilder out) {
+        reset(out);
+    }
+
+    @Override
+    public CborWriter newWriter() {
+        return new CborWriter();
+    }
+
+    @Override
+    protected void writeMapStart() {
+        out.write(0xbf);
+    }
+
+    @Override
+    protected void writeMapEnd(int mark, int count) {
+        out.write(0xff);
+    }
+
+    @Override
+    protected void writeArrayStart() {
+        out.write(0x9f);
+    }
+
+    @Override
+    protected void writeArrayEnd(int mark, int count) {
+        out.write(0xff);
+    }
+
+    @Override
+    protected void writeNil() {
+        out.write(0xf6);
+    }
+
+    @Override
+    protected void writeBoolean(boolean value) {
+        out.write(value ? 0xf5 : 0xf4);
+    }
+
+    @Override
+    protected void writeLong(long value) {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    @Override
+    protected void writeDouble(double value) {
+        out.write(0xfb);
+        writeLongBE(Double.doubleToLongBits(value));
+    }
+
+    @Override
+    protected void writeStringHeader(int length) {
+        writeHeader(MAJOR_TEXT, length);
+    }
+
+    @Override
+    protected void patchShortStringHeader(byte[] buf, int pos, int length) {
+        buf[pos] = (byte) ((MAJOR_TEXT << 5) | 24);
+        buf[pos + 1] = (byte) length;
+    }
+
+    private void writeHeader(int major, long value) {
+        int type = major << 5;
+        if (value < 24) {
+            out.write(type | (int) value);
+        } else if (value < 256) {
+            out.write(type | 24);
+            out.write((int) value);
+        } else if (value < 65536) {
+            out.write(type | 25);
+            out.write((int) (value >>> 8));
+            out.write((int) value);
+        } else if (value < 0x100000000L) {
+            out.write(type | 26);
+            out.writeInt((int) value);
+        } else {
+            out.write(type | 27);
+            writeLongBE(value);
+        }
+    }
+}
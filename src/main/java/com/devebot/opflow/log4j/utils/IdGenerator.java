@@ -0,0 +1,113 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates the identifiers of log events, written straight into the
+ *  encoder buffer
+ *
+ * @author drupalex
+ */
+public abstract class IdGenerator {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /**
+     * Writes the next identifier at the end of the buffer
+     *
+     * @param out the target buffer
+     */
+    public abstract void writeId(BytesBuilder out);
+
+    public String nextId() {
+        BytesBuilder out = new BytesBuilder(36);
+        writeId(out);
+        return out.toString();
+    }
+
+    /**
+     * Resolves a generator by its short name ("uuid" or "uuid7") or by the
+     *  name of a class extending IdGenerator
+     *
+     * @param name the name of the generator
+     * @return IdGenerator the generator
+     */
+    public static IdGenerator forName(String name) {
+        if (name == null || name.isEmpty() || "uuid".equalsIgnoreCase(name) || "random".equalsIgnoreCase(name)) {
+            return new RandomUUID();
+        }
+        if ("uuid7".equalsIgnoreCase(name) || "time".equalsIgnoreCase(name)) {
+            return new TimeOrderedUUID();
+        }
+        try {
+            return Class.forName(name).asSubclass(IdGenerator.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid id generator: " + name, e);
+        }
+    }
+
+    /**
+     * Writes the two longs as a UUID string (8-4-4-4-12 hexadecimal digits)
+     */
+    protected static void writeUUID(long msb, long lsb, BytesBuilder out) {
+        writeHex(msb >>> 32, 8, out);
+        out.write('-');
+        writeHex(msb >>> 16, 4, out);
+        out.write('-');
+        writeHex(msb, 4, out);
+        out.write('-');
+        writeHex(lsb >>> 48, 4, out);
+        out.write('-');
+        writeHex(lsb, 12, out);
+    }
+
+    private static void writeHex(long value, int digits, BytesBuilder out) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.write(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * Random (version 4) UUID from the shared SecureRandom of java.util.UUID
+     */
+    public static class RandomUUID extends IdGenerator {
+        @Override
+        public void writeId(BytesBuilder out) {
+            UUID uuid = UUID.randomUUID();
+            writeUUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), out);
+        }
+    }
+
+    /**
+     * Time-ordered (version 7 like) UUID: 48 bits of epoch milliseconds, a
+     *  12 bits per-thread counter and 62 bits from the per-thread random.
+     *  Nothing is shared between threads and the identifiers of one thread
+     *  are strictly increasing.
+     */
+    public static class TimeOrderedUUID extends IdGenerator {
+        private final ThreadLocal<long[]> states = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[] { -1L, 0L };
+            }
+        };
+
+        @Override
+        public void writeId(BytesBuilder out) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final long[] state = states.get();
+            long millis = System.currentTimeMillis();
+            if (millis > state[0]) {
+                state[0] = millis;
+                state[1] = random.nextInt(1 << 11);
+            } else if (++state[1] > 0xFFF) {
+                state[0]++;
+                state[1] = 0;
+            }
+            long msb = (state[0] << 16) | 0x7000L | state[1];
+            long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+            writeUUID(msb, lsb, out);
+        }
+    }
+}
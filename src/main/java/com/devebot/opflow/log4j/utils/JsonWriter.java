@@ -0,0 +1,368 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streaming JSON writer that encodes straight into a reusable UTF-8 buffer.
+ *
+ * Like Gson with its default settings, the name of a field whose value is
+ * null is dropped. Values of unknown types fall back to Gson.
+ *
+ * @author drupalex
+ */
+public class JsonWriter extends StructWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+    private static final byte[] LONG_MIN = String.valueOf(Long.MIN_VALUE).getBytes();
+
+    private final byte[] digits = new byte[20];
+    private boolean[] nonEmpty = new boolean[16];
+    private int depth = 0;
+    private String deferredName;
+    private BytesBuilder out;
+
+    public JsonWriter() {
+        this(null);
+    }
+
+    public JsonWriter(BytesBuilder out) {
+        reset(out);
+    }
+
+    /**
+     * Starts a new document in the given buffer
+     * 
+     * @param out the target buffer
+     * @return JsonWriter this writer
+     */
+    @Override
+    public final JsonWriter reset(BytesBuilder out) {
+        this.out = out;
+        this.depth = 0;
+        this.deferredName = null;
+        return this;
+    }
+
+    @Override
+    public BytesBuilder getOutput() {
+        return out;
+    }
+
+    @Override
+    public JsonWriter newWriter() {
+        return new JsonWriter();
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        beforeValue();
+        out.write('{');
+        push();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        deferredName = null;
+        depth--;
+        out.write('}');
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        beforeValue();
+        out.write('[');
+        push();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        depth--;
+        out.write(']');
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        if (deferredName != null) {
+            deferredName = null;
+            return this;
+        }
+        beforeValue();
+        out.write(NULL, 0, NULL.length);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        byte[] literal = value ? TRUE : FALSE;
+        out.write(literal, 0, literal.length);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        beforeValue();
+        writeUtf8(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a timestamp as an ISO-8601 UTC string
+     * 
+     * @param time the milliseconds since the epoch
+     * @return JsonWriter this writer
+     */
+    @Override
+    public JsonWriter timestampValue(long time) {
+        beforeValue();
+        out.write('"');
+        TimeUtil.writeISO8601UTC(time, out);
+        out.write('"');
+        return this;
+    }
+
+    /**
+     * Writes the next identifier of a generator as a string
+     * 
+     * @param generator the identifier generator
+     * @return JsonWriter this writer
+     */
+    @Override
+    public JsonWriter idValue(IdGenerator generator) {
+        beforeValue();
+        out.write('"');
+        generator.writeId(out);
+        out.write('"');
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Object value) {
+        super.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter fields(Map<?, ?> fields) {
+        super.fields(fields);
+        return this;
+    }
+
+    /**
+     * Keeps the exact text of the other numbers, but a Float goes through
+     *  value(double) which writes NaN and the infinities as null
+     */
+    @Override
+    protected JsonWriter numberValue(Number value) {
+        if (value instanceof Float || value instanceof Double) {
+            return value(value.doubleValue());
+        }
+        return rawValue(value.toString());
+    }
+
+    @Override
+    protected JsonWriter objectValue(Object value) {
+        return rawValue(JsonTool.toString(value));
+    }
+
+    /**
+     * Writes an already encoded JSON value
+     * 
+     * @param json the JSON text
+     * @return JsonWriter this writer
+     */
+    public JsonWriter rawValue(String json) {
+        beforeValue();
+        writeUtf8(json);
+        return this;
+    }
+
+    /**
+     * Writes an already encoded JSON value
+     * 
+     * @param fragment the encoded value
+     * @return JsonWriter this writer
+     */
+    @Override
+    public JsonWriter rawValue(byte[] fragment) {
+        beforeValue();
+        out.write(fragment, 0, fragment.length);
+        return this;
+    }
+
+    /**
+     * Splices fields already encoded by {@link #encodeFields} into the
+     *  current object
+     * 
+     * @param fragment the encoded fields
+     * @return JsonWriter this writer
+     */
+    @Override
+    public JsonWriter rawFields(byte[] fragment) {
+        if (fragment == null || fragment.length == 0) {
+            return this;
+        }
+        if (nonEmpty[depth]) {
+            out.write(',');
+        } else {
+            nonEmpty[depth] = true;
+        }
+        out.write(fragment, 0, fragment.length);
+        return this;
+    }
+
+    @Override
+    public byte[] compileFields(Map<?, ?> fields) {
+        return encodeFields(fields);
+    }
+
+    /**
+     * Encodes the entries of a map as a fragment of comma separated fields,
+     *  ready to be spliced into other objects
+     * 
+     * @param fields the map of fields
+     * @return byte[] the encoded fields, null if there is none
+     */
+    public static byte[] encodeFields(Map<?, ?> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        BytesBuilder buffer = new BytesBuilder();
+        new JsonWriter(buffer).beginObject().fields(fields).endObject();
+        if (buffer.size() <= 2) {
+            return null;
+        }
+        return Arrays.copyOfRange(buffer.array(), 1, buffer.size() - 1);
+    }
+
+    private void push() {
+        depth++;
+        if (depth == nonEmpty.length) {
+            nonEmpty = Arrays.copyOf(nonEmpty, depth << 1);
+        }
+        nonEmpty[depth] = false;
+    }
+
+    private void beforeValue() {
+        if (depth > 0) {
+            if (nonEmpty[depth]) {
+                out.write(',');
+            } else {
+                nonEmpty[depth] = true;
+            }
+        }
+        if (deferredName != null) {
+            writeString(deferredName);
+            out.write(':');
+            deferredName = null;
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            out.write(LONG_MIN, 0, LONG_MIN.length);
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    private void writeString(String value) {
+        out.write('"');
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    out.write(c);
+                    continue;
+                }
+                out.write('\\');
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        out.write(c);
+                        break;
+                    case '\n':
+                        out.write('n');
+                        break;
+                    case '\r':
+                        out.write('r');
+                        break;
+                    case '\t':
+                        out.write('t');
+                        break;
+                    case '\b':
+                        out.write('b');
+                        break;
+                    case '\f':
+                        out.write('f');
+                        break;
+                    default:
+                        writeUnicodeEscape(c);
+                }
+            } else if (c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+                out.write('\\');
+                writeUnicodeEscape(c);
+            } else {
+                i = writeUtf8Char(out, value, i, c);
+            }
+        }
+        out.write('"');
+    }
+
+    private void writeUnicodeEscape(char c) {
+        out.write('u');
+        out.write(HEX[(c >> 12) & 0xF]);
+        out.write(HEX[(c >> 8) & 0xF]);
+        out.write(HEX[(c >> 4) & 0xF]);
+        out.write(HEX[c & 0xF]);
+    }
+
+    private void writeUtf8(String value) {
+        writeUtf8(out, value);
+    }
+}
@@ -0,0 +1,40 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map evicting the least recently used entry
+ *
+ * @author drupalex
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+    private final Map<K, V> entries;
+
+    public LruCache(final int capacity) {
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,123 @@
+package com.devebot.opflow.log4j.utils;
+
+/**
+ * Streaming MessagePack writer. The maps and arrays are written with 32-bit
+ *  headers whose number of entries is patched when they are closed.
+ *
+ * @author drupalex
+ */
+public class MessagePackWriter extends BinaryWriter {
+
+    public MessagePackWriter() {
+        this(null);
+    }
+
+    public MessagePackWriter(BytesBuilder out) {
+        reset(out);
+    }
+
+    @Override
+    public MessagePackWriter newWriter() {
+        return new MessagePackWriter();
+    }
+
+    @Override
+    protected void writeMapStart() {
+        out.write(0xdf);
+        out.writeInt(0);
+    }
+
+    @Override
+    protected void writeMapEnd(int mark, int count) {
+        out.setInt(mark + 1, count);
+    }
+
+    @Override
+    protected void writeArrayStart() {
+        out.write(0xdd);
+        out.writeInt(0);
+    }
+
+    @Override
+    protected void writeArrayEnd(int mark, int count) {
+        out.setInt(mark + 1, count);
+    }
+
+    @Override
+    protected void writeNil() {
+        out.write(0xc0);
+    }
+
+    @Override
+    protected void writeBoolean(boolean value) {
+        out.write(value ? 0xc3 : 0xc2);
+    }
+
+    @Override
+    protected void writeLong(long value) {
+        if (value >= 0) {
+            if (value < 128) {
+                out.write((int) value);
+            } else if (value < 256) {
+                out.write(0xcc);
+                out.write((int) value);
+            } else if (value < 65536) {
+                out.write(0xcd);
+                out.write((int) (value >>> 8));
+                out.write((int) value);
+            } else if (value < 0x100000000L) {
+                out.write(0xce);
+                out.writeInt((int) value);
+            } else {
+                out.write(0xcf);
+                writeLongBE(value);
+            }
+        } else {
+            if (value >= -32) {
+                out.write((int) value);
+            } else if (value >= Byte.MIN_VALUE) {
+                out.write(0xd0);
+                out.write((int) value);
+            } else if (value >= Short.MIN_VALUE) {
+                out.write(0xd1);
+                out.write((int) (value >>> 8));
+                out.write((int) value);
+            } else if (value >= Integer.MIN_VALUE) {
+                out.write(0xd2);
+                out.writeInt((int) value);
+            } else {
+                out.write(0xd3);
+                writeLongBE(value);
+            }
+        }
+    }
+
+    @Override
+    protected void writeDouble(double value) {
+        out.write(0xcb);
+        writeLongBE(Double.doubleToLongBits(value));
+    }
+
+    @Override
+    protected void writeStringHeader(int length) {
+        if (length < 32) {
+            out.write(0xa0 | length);
+        } else if (length < 256) {
+            out.write(0xd9);
+            out.write(length);
+        } else if (length < 65536) {
+            out.write(0xda);
+            out.write(length >>> 8);
+            out.write(length);
+        } else {
+            out.write(0xdb);
+            out.writeInt(length);
+        }
+    }
+
+    @Override
+    protected void patchShortStringHeader(byte[] buf, int pos, int length) {
+        buf[pos] = (byte) 0xd9;
+        buf[pos + 1] = (byte) length;
+    }
+}
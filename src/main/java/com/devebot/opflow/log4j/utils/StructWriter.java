@@ -0,0 +1,227 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.util.Map;
+
+/**
+ * Streaming writer of the JSON data model (objects, arrays, strings,
+ *  numbers, booleans and null) into a reusable byte buffer, whatever the
+ *  actual encoding is.
+ *
+ * The name of a field whose value is null is dropped.
+ *
+ * @author drupalex
+ */
+public abstract class StructWriter {
+
+    /**
+     * Starts a new document in the given buffer
+     *
+     * @param out the target buffer
+     * @return StructWriter this writer
+     */
+    public abstract StructWriter reset(BytesBuilder out);
+
+    public abstract BytesBuilder getOutput();
+
+    /**
+     * @return StructWriter a new writer of the same encoding
+     */
+    public abstract StructWriter newWriter();
+
+    public abstract StructWriter beginObject();
+
+    public abstract StructWriter endObject();
+
+    public abstract StructWriter beginArray();
+
+    public abstract StructWriter endArray();
+
+    public abstract StructWriter name(String name);
+
+    public abstract StructWriter nullValue();
+
+    public abstract StructWriter value(String value);
+
+    public abstract StructWriter value(boolean value);
+
+    public abstract StructWriter value(long value);
+
+    public abstract StructWriter value(double value);
+
+    /**
+     * Writes a timestamp as an ISO-8601 UTC string
+     *
+     * @param time the milliseconds since the epoch
+     * @return StructWriter this writer
+     */
+    public abstract StructWriter timestampValue(long time);
+
+    /**
+     * Writes the next identifier of a generator as a string
+     *
+     * @param generator the identifier generator
+     * @return StructWriter this writer
+     */
+    public abstract StructWriter idValue(IdGenerator generator);
+
+    /**
+     * Writes a value already encoded by a writer of the same encoding
+     *
+     * @param fragment the encoded value
+     * @return StructWriter this writer
+     */
+    public abstract StructWriter rawValue(byte[] fragment);
+
+    /**
+     * Splices fields compiled by {@link #compileFields} into the current object
+     *
+     * @param fragment the compiled fields
+     * @return StructWriter this writer
+     */
+    public abstract StructWriter rawFields(byte[] fragment);
+
+    /**
+     * Compiles the entries of a map into a fragment, ready to be spliced into
+     *  other objects by a writer of the same encoding
+     *
+     * @param fields the map of fields
+     * @return byte[] the compiled fields, null if there is none
+     */
+    public abstract byte[] compileFields(Map<?, ?> fields);
+
+    /**
+     * Writes a value of any type: strings, numbers, booleans, maps, iterables
+     *  and arrays are encoded directly, anything else through Gson
+     *
+     * @param value the value
+     * @return StructWriter this writer
+     */
+    public StructWriter value(Object value) {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof String) {
+            return value((String) value);
+        }
+        if (value instanceof Number) {
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return value(((Number) value).longValue());
+            }
+            if (value instanceof Double) {
+                return value(((Double) value).doubleValue());
+            }
+            return numberValue((Number) value);
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof CharSequence || value instanceof Character) {
+            return value(value.toString());
+        }
+        if (value instanceof Map) {
+            beginObject();
+            fields((Map<?, ?>) value);
+            return endObject();
+        }
+        if (value instanceof Iterable) {
+            beginArray();
+            for (Object item : (Iterable<?>) value) {
+                value(item);
+            }
+            return endArray();
+        }
+        if (value instanceof Object[]) {
+            beginArray();
+            for (Object item : (Object[]) value) {
+                value(item);
+            }
+            return endArray();
+        }
+        return objectValue(value);
+    }
+
+    /**
+     * Writes the entries of a map as fields of the current object
+     *
+     * @param fields the map of fields
+     * @return StructWriter this writer
+     */
+    public StructWriter fields(Map<?, ?> fields) {
+        if (fields != null) {
+            for (Map.Entry<?, ?> entry : fields.entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a number which is neither an integer nor a double
+     */
+    protected StructWriter numberValue(Number value) {
+        return value(value.doubleValue());
+    }
+
+    /**
+     * Writes a value of an unknown type
+     */
+    protected StructWriter objectValue(Object value) {
+        return value(JsonTool.toString(value));
+    }
+
+    /**
+     * Counts the bytes of a string encoded in UTF-8, a lone surrogate
+     *  being replaced by '?'
+     */
+    protected static int utf8Length(String value) {
+        final int length = value.length();
+        int count = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    count += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    count += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    count += 2;
+                }
+            }
+        }
+        return count;
+    }
+
+    protected static void writeUtf8(BytesBuilder out, String value) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.write(c);
+            } else {
+                i = writeUtf8Char(out, value, i, c);
+            }
+        }
+    }
+
+    protected static int writeUtf8Char(BytesBuilder out, String value, int i, char c) {
+        if (c < 0x800) {
+            out.write(0xC0 | (c >> 6));
+            out.write(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            out.write(0xF0 | (codePoint >> 18));
+            out.write(0x80 | ((codePoint >> 12) & 0x3F));
+            out.write(0x80 | ((codePoint >> 6) & 0x3F));
+            out.write(0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            out.write('?');
+        } else {
+            out.write(0xE0 | (c >> 12));
+            out.write(0x80 | ((c >> 6) & 0x3F));
+            out.write(0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+}
@@ -1,5 +1,6 @@
 package com.devebot.opflow.log4j.utils;
 
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -13,23 +14,92 @@ import java.util.TimeZone;
 public class TimeUtil {
     
     private static final String ISO8601_TEMPLATE = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat(ISO8601_TEMPLATE);
-    
-    static {
-        DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
+    private static final int ISO8601_LENGTH = 24;
+    private static final int PREFIX_LENGTH = 20;
+    // the range of the four-digit years, 0000-01-01T00:00:00Z to 10000-01-01T00:00:00Z excluded
+    private static final long MIN_SECOND = -62167219200L;
+    private static final long MAX_SECOND = 253402300800L;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat(ISO8601_TEMPLATE);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    /**
+     * The "yyyy-MM-ddTHH:mm:ss." prefix of the last formatted second. It is
+     *  immutable and swapped as a whole, so readers never need a lock.
+     */
+    private static volatile SecondPrefix LAST_SECOND = new SecondPrefix(Long.MIN_VALUE, null);
     
     public static String toISO8601UTC(Date date) {
-        return DATE_FORMAT.format(date);
+        return toISO8601UTC(date.getTime());
     }
     
     public static String toISO8601UTC(long time) {
-        return DATE_FORMAT.format(new Date(time));
+        if (!hasFourDigitYear(floorDiv(time, 1000))) {
+            return DATE_FORMAT.get().format(new Date(time));
+        }
+        byte[] buf = new byte[ISO8601_LENGTH];
+        formatISO8601UTC(time, buf, 0);
+        return new String(buf, US_ASCII);
+    }
+
+    /**
+     * Formats a timestamp as "yyyy-MM-ddTHH:mm:ss.SSSZ" into a byte array.
+     *  Only the milliseconds are computed when the second has not changed.
+     *  A year out of 0000-9999 is formatted by SimpleDateFormat instead, and
+     *  takes more than 24 bytes.
+     *
+     * @param time the milliseconds since the epoch
+     * @param buf the target array, with at least 24 bytes from offset
+     * @param offset the position of the first byte
+     * @return int the position after the last byte
+     */
+    public static int formatISO8601UTC(long time, byte[] buf, int offset) {
+        long second = floorDiv(time, 1000);
+        if (!hasFourDigitYear(second)) {
+            byte[] text = DATE_FORMAT.get().format(new Date(time)).getBytes(US_ASCII);
+            System.arraycopy(text, 0, buf, offset, text.length);
+            return offset + text.length;
+        }
+        System.arraycopy(getSecondPrefix(second), 0, buf, offset, PREFIX_LENGTH);
+        int millis = (int) (time - second * 1000);
+        buf[offset + 20] = (byte) ('0' + millis / 100);
+        buf[offset + 21] = (byte) ('0' + (millis / 10) % 10);
+        buf[offset + 22] = (byte) ('0' + millis % 10);
+        buf[offset + 23] = 'Z';
+        return offset + ISO8601_LENGTH;
+    }
+
+    /**
+     * Writes a timestamp as "yyyy-MM-ddTHH:mm:ss.SSSZ" at the end of a buffer
+     *
+     * @param time the milliseconds since the epoch
+     * @param out the target buffer
+     */
+    public static void writeISO8601UTC(long time, BytesBuilder out) {
+        long second = floorDiv(time, 1000);
+        if (!hasFourDigitYear(second)) {
+            byte[] text = DATE_FORMAT.get().format(new Date(time)).getBytes(US_ASCII);
+            out.write(text, 0, text.length);
+            return;
+        }
+        out.write(getSecondPrefix(second), 0, PREFIX_LENGTH);
+        int millis = (int) (time - second * 1000);
+        out.write('0' + millis / 100);
+        out.write('0' + (millis / 10) % 10);
+        out.write('0' + millis % 10);
+        out.write('Z');
     }
     
     public static Date fromISO8601UTC(String dateStr) {
         try {
-            return DATE_FORMAT.parse(dateStr);
+            return DATE_FORMAT.get().parse(dateStr);
         } catch (ParseException e) {}
         return null;
     }
@@ -41,4 +111,76 @@ public class TimeUtil {
     public static String getCurrentTimeString() {
         return toISO8601UTC(new Date());
     }
+
+    /**
+     * The fast path writes the year on four digits, the general formatter
+     *  handles the other ones
+     */
+    private static boolean hasFourDigitYear(long second) {
+        return second >= MIN_SECOND && second < MAX_SECOND;
+    }
+
+    private static byte[] getSecondPrefix(long second) {
+        SecondPrefix cached = LAST_SECOND;
+        if (cached.second != second) {
+            cached = new SecondPrefix(second, encodeSecondPrefix(second));
+            LAST_SECOND = cached;
+        }
+        return cached.prefix;
+    }
+
+    /**
+     * Converts the seconds since the epoch to a proleptic Gregorian UTC date,
+     *  using the days-from-civil algorithm of Howard Hinnant
+     */
+    private static byte[] encodeSecondPrefix(long second) {
+        long days = floorDiv(second, 86400);
+        int secondOfDay = (int) (second - days * 86400);
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        writeDigits(prefix, 0, year, 4);
+        prefix[4] = '-';
+        writeDigits(prefix, 5, month, 2);
+        prefix[7] = '-';
+        writeDigits(prefix, 8, day, 2);
+        prefix[10] = 'T';
+        writeDigits(prefix, 11, secondOfDay / 3600, 2);
+        prefix[13] = ':';
+        writeDigits(prefix, 14, (secondOfDay / 60) % 60, 2);
+        prefix[16] = ':';
+        writeDigits(prefix, 17, secondOfDay % 60, 2);
+        prefix[19] = '.';
+        return prefix;
+    }
+
+    private static void writeDigits(byte[] buf, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return ((x % y) != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static final class SecondPrefix {
+        final long second;
+        final byte[] prefix;
+
+        SecondPrefix(long second, byte[] prefix) {
+            this.second = second;
+            this.prefix = prefix;
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.lang.StackWalker.StackFrame;
+import java.util.Optional;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Java 9+ version of the caller locator: StackWalker only materializes the
+ *  frames up to the caller of the logger.
+ *
+ * @author drupalex
+ */
+public final class CallerLocator {
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private CallerLocator() {
+    }
+
+    /**
+     * @param event the current logging event object
+     * @return LocationInfo the location of the caller of the logger, or the
+     *  one computed by log4j if the logger class is not on the stack
+     */
+    public static LocationInfo locate(LoggingEvent event) {
+        final String fqcn = event.getFQNOfLoggerClass();
+        if (fqcn == null || event.locationInformationExists()) {
+            return event.getLocationInformation();
+        }
+        Optional<StackFrame> caller = WALKER.walk(frames -> frames
+                .dropWhile(frame -> !fqcn.equals(frame.getClassName()))
+                .dropWhile(frame -> fqcn.equals(frame.getClassName()))
+                .findFirst());
+        if (!caller.isPresent()) {
+            return event.getLocationInformation();
+        }
+        StackFrame frame = caller.get();
+        return toLocationInfo(frame.getFileName(), frame.getClassName(), frame.getMethodName(), frame.getLineNumber());
+    }
+
+    static LocationInfo toLocationInfo(String fileName, String className, String methodName, int lineNumber) {
+        return new LocationInfo(fileName, className, methodName, (lineNumber >= 0) ? String.valueOf(lineNumber) : LocationInfo.NA);
+    }
+}
@@ -0,0 +1,686 @@
+package com.devebot.opflow.log4j.appenders;
+
+import com.devebot.opflow.log4j.helpers.PayloadCodec;
+import com.devebot.opflow.log4j.layouts.LogstashLayout;
+import com.rabbitmq.nostro.client.AMQP;
+import com.rabbitmq.nostro.client.Channel;
+import com.rabbitmq.nostro.client.Connection;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.OnlyOnceErrorHandler;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.DenyAllFilter;
+import org.apache.log4j.varia.StringMatchFilter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RabbitMQAppenderTest {
+
+    private static final Logger LOG = Logger.getLogger(RabbitMQAppenderTest.class);
+
+    private final StubBroker broker = new StubBroker();
+    private RabbitMQAppender appender;
+
+    @After
+    public void tearDown() {
+        broker.resumeConnections();
+        broker.resume();
+        if (appender != null) {
+            appender.close();
+        }
+    }
+
+    @Test
+    public void testThresholdRejectsTheLessSevereEvents() throws Exception {
+        appender = newAppender();
+        appender.setLayout(new PatternLayout("%m"));
+        appender.setThreshold(Level.WARN);
+        appender.activateOptions();
+
+        append(Level.INFO, "low");
+        append(Level.WARN, "high");
+        Assert.assertTrue(appender.flush(5000));
+        Assert.assertEquals(Arrays.asList("high"), broker.awaitBodies(1, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(1, appender.getMetrics().getFilteredCount());
+        Assert.assertEquals(1, appender.getMetrics().getAppendedCount());
+    }
+
+    @Test
+    public void testDenyFilterRejectsTheEvent() throws Exception {
+        appender = newAppender();
+        appender.setLayout(new PatternLayout("%m"));
+        appender.addFilter(newStringMatchFilter("secret", false));
+        appender.activateOptions();
+
+        append(Level.INFO, "public");
+        append(Level.INFO, "secret");
+        Assert.assertTrue(appender.flush(5000));
+        Assert.assertEquals(Arrays.asList("public"), broker.awaitBodies(1, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(1, appender.getMetrics().getFilteredCount());
+    }
+
+    @Test
+    public void testAcceptFilterSkipsTheFollowingFilters() throws Exception {
+        appender = newAppender();
+        appender.setLayout(new PatternLayout("%m"));
+        appender.addFilter(newStringMatchFilter("keep", true));
+        appender.addFilter(new DenyAllFilter());
+        appender.activateOptions();
+
+        append(Level.INFO, "keep me");
+        append(Level.INFO, "drop me");
+        Assert.assertTrue(appender.flush(5000));
+        Assert.assertEquals(Arrays.asList("keep me"), broker.awaitBodies(1, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(1, appender.getMetrics().getFilteredCount());
+    }
+
+    @Test
+    public void testClosedAppenderDoesNotPublish() throws Exception {
+        appender = newAppender();
+        appender.activateOptions();
+        appender.close();
+
+        append(Level.ERROR, "too late");
+        Assert.assertEquals(0, broker.awaitTypes(1, 100, TimeUnit.MILLISECONDS).size());
+        Assert.assertEquals(0, appender.getMetrics().getAppendedCount());
+    }
+
+    @Test
+    public void testBatchIsSentWhenFullOrAfterTheLinger() throws Exception {
+        appender = newAppender();
+        appender.setLayout(new PatternLayout("%m"));
+        appender.setBatchSize(4);
+        appender.setBatchLinger(1000);
+        appender.activateOptions();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            append(Level.INFO, "event " + i);
+        }
+        Assert.assertEquals(4, broker.awaitBodies(4, 5, TimeUnit.SECONDS).size());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 500);
+
+        started = System.nanoTime();
+        append(Level.INFO, "event 4");
+        append(Level.INFO, "event 5");
+        Assert.assertEquals(4, broker.awaitBodies(5, 300, TimeUnit.MILLISECONDS).size());
+        List<String> bodies = broker.awaitBodies(6, 5, TimeUnit.SECONDS);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 900);
+        Assert.assertEquals(Arrays.asList("event 0", "event 1", "event 2", "event 3", "event 4", "event 5"), bodies);
+    }
+
+    @Test
+    public void testShardOrderingKeepsTheOrderOfEachThread() throws Exception {
+        appender = newAppender();
+        appender.setLayout(new PatternLayout("%t %m"));
+        appender.setPublisherWorkers(4);
+        appender.activateOptions();
+
+        appendFromThreads(4, null, 100);
+        Assert.assertTrue(appender.flush(5000));
+        List<StubBroker.Message> messages = broker.awaitMessages(400, 0, TimeUnit.SECONDS);
+        Assert.assertEquals(400, messages.size());
+        Map<String, Integer> last = new HashMap<>();
+        Map<String, String> workers = new HashMap<>();
+        for (StubBroker.Message message : messages) {
+            String[] fields = new String(message.body, StandardCharsets.UTF_8).split(" ");
+            Integer previous = last.put(fields[0], Integer.valueOf(fields[1]));
+            Assert.assertTrue(previous == null || previous < Integer.parseInt(fields[1]));
+            String worker = workers.put(fields[0], message.worker);
+            Assert.assertTrue(worker == null || worker.equals(message.worker));
+        }
+        Assert.assertEquals(4, last.size());
+    }
+
+    @Test
+    public void testFullWorkerHandsOverToAnotherOne() throws Exception {
+        appender = newAppender();
+        appender.setPublisherWorkers(2);
+        appender.setBufferSize(4);
+        appender.setOverflowPolicy("DROP_NEWEST");
+        appender.setShardOrdering(false);
+        appender.activateOptions();
+
+        broker.hold();
+        append(Level.INFO, "first");
+        Assert.assertTrue(broker.awaitHeld(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 8; i++) {
+            append(Level.INFO, "event " + i);
+        }
+        Assert.assertEquals(0, appender.getDroppedCount());
+        broker.resume();
+
+        Set<String> workers = new HashSet<>();
+        for (StubBroker.Message message : broker.awaitMessages(9, 5, TimeUnit.SECONDS)) {
+            workers.add(message.worker);
+        }
+        Assert.assertEquals(2, workers.size());
+    }
+
+    @Test
+    public void testFullWorkerKeepsItsShardWhenOrdered() throws Exception {
+        appender = newAppender();
+        appender.setPublisherWorkers(2);
+        appender.setBufferSize(4);
+        appender.setOverflowPolicy("DROP_NEWEST");
+        appender.setShardOrdering(true);
+        appender.activateOptions();
+
+        broker.hold();
+        append(Level.INFO, "first");
+        Assert.assertTrue(broker.awaitHeld(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 8; i++) {
+            append(Level.INFO, "event " + i);
+        }
+        Assert.assertEquals(4, appender.getDroppedCount());
+        broker.resume();
+        Assert.assertEquals(5, broker.awaitMessages(5, 5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testLoggerShardingKeepsALoggerOnOneWorker() throws Exception {
+        appender = newAppender();
+        appender.setPublisherWorkers(4);
+        appender.setShardingKey("logger");
+        appender.activateOptions();
+
+        appendFromThreads(4, Logger.getLogger("shard.logger"), 20);
+        Assert.assertTrue(appender.flush(5000));
+        Set<String> workers = new HashSet<>();
+        for (StubBroker.Message message : broker.awaitMessages(80, 0, TimeUnit.SECONDS)) {
+            workers.add(message.worker);
+        }
+        Assert.assertEquals(1, workers.size());
+    }
+
+    @Test
+    public void testWorkerConnectionsOpenOneConnectionPerWorker() throws Exception {
+        appender = newAppender();
+        appender.setPublisherWorkers(2);
+        appender.setWorkerConnections(true);
+        appender.activateOptions();
+        Assert.assertEquals(1, broker.getConnectionCount());
+
+        appendFromThreads(8, null, 10);
+        Assert.assertTrue(appender.flush(5000));
+        Set<String> workers = new HashSet<>();
+        for (StubBroker.Message message : broker.awaitMessages(80, 0, TimeUnit.SECONDS)) {
+            workers.add(message.worker);
+        }
+        Assert.assertEquals(2, workers.size());
+        Assert.assertEquals(3, broker.getConnectionCount());
+    }
+
+    @Test
+    public void testFramedBatchesAreSplitPerRoutingKey() throws Exception {
+        appender = newAppender();
+        appender.setLayout(new PatternLayout("%m"));
+        appender.setRoutingKey("${logger}");
+        appender.setBatchFraming(true);
+        appender.setBatchSize(8);
+        appender.setCompression("gzip");
+        appender.setCompressionThreshold(64);
+        appender.activateOptions();
+
+        Logger alpha = Logger.getLogger("frame.alpha");
+        Logger beta = Logger.getLogger("frame.beta");
+        String padding = "xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx";
+        broker.hold();
+        append(alpha, Level.INFO, "first");
+        Assert.assertTrue(broker.awaitHeld(5, TimeUnit.SECONDS));
+        append(alpha, Level.INFO, "alpha 0 " + padding);
+        append(beta, Level.INFO, "beta 0");
+        append(alpha, Level.WARN, "alpha 1 " + padding);
+        append(alpha, Level.INFO, "alpha 2 " + padding);
+        broker.resume();
+
+        List<StubBroker.Message> messages = broker.awaitMessages(3, 5, TimeUnit.SECONDS);
+        Assert.assertEquals(3, messages.size());
+
+        StubBroker.Message single = messages.get(0);
+        Assert.assertEquals("frame.alpha", single.routingKey);
+        Assert.assertEquals("text/plain", single.properties.getContentType());
+        Assert.assertNull(single.properties.getContentEncoding());
+        Assert.assertEquals("first", new String(single.body, StandardCharsets.UTF_8));
+
+        StubBroker.Message framed = messages.get(1);
+        Assert.assertEquals("frame.alpha", framed.routingKey);
+        Assert.assertEquals("application/vnd.opflow.batch", framed.properties.getContentType());
+        Assert.assertEquals("gzip", framed.properties.getContentEncoding());
+        Assert.assertEquals("WARN", framed.properties.getType());
+        byte[] frame = PayloadCodec.forName("gzip").decompress(framed.body);
+        Assert.assertEquals(Arrays.asList("alpha 0 " + padding, "alpha 1 " + padding, "alpha 2 " + padding), unframe(frame));
+
+        StubBroker.Message small = messages.get(2);
+        Assert.assertEquals("frame.beta", small.routingKey);
+        Assert.assertEquals("application/vnd.opflow.batch", small.properties.getContentType());
+        Assert.assertNull(small.properties.getContentEncoding());
+        Assert.assertEquals(Arrays.asList("beta 0"), unframe(small.body));
+    }
+
+    @Test
+    public void testTemplatedRoutingKeyIsBoundToAnyKeyOnATopicExchange() throws Exception {
+        appender = newAppender();
+        appender.setExchangeType("topic");
+        appender.setRoutingKey("${level}.${logger}");
+        appender.activateOptions();
+
+        Assert.assertEquals(Arrays.asList("#"), broker.getBindings());
+    }
+
+    @Test
+    public void testTemplatedRoutingKeyNeedsBindingsOnADirectExchange() throws Exception {
+        final List<String> errors = new ArrayList<>();
+        OnlyOnceErrorHandler errorHandler = new OnlyOnceErrorHandler() {
+            @Override
+            public void error(String message, Exception e, int errorCode, LoggingEvent event) {
+                errors.add(message);
+            }
+        };
+        appender = newAppender();
+        appender.setErrorHandler(errorHandler);
+        appender.setExchangeType("direct");
+        appender.setRoutingKey("${level}.${logger}");
+        appender.activateOptions();
+
+        Assert.assertEquals(0, broker.getBindings().size());
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0), errors.get(0).contains("routingBindings"));
+
+        appender.close();
+        errors.clear();
+        appender = newAppender();
+        appender.setErrorHandler(errorHandler);
+        appender.setExchangeType("direct");
+        appender.setRoutingKey("${level}.${logger}");
+        appender.setRoutingBindings("ERROR." + LOG.getName() + ", FATAL." + LOG.getName());
+        appender.activateOptions();
+
+        Assert.assertEquals(Arrays.asList("ERROR." + LOG.getName(), "FATAL." + LOG.getName()), broker.getBindings());
+        Assert.assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void testSevereEventsOvertakeTheBacklog() throws Exception {
+        appender = newAppender();
+        appender.setBufferSize(64);
+        appender.setOverflowPolicy("DROP_NEWEST");
+        appender.activateOptions();
+
+        broker.hold();
+        append(Level.DEBUG, "first");
+        Assert.assertTrue(broker.awaitHeld(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 32; i++) {
+            append(Level.DEBUG, "backlog " + i);
+        }
+        append(Level.ERROR, "failure");
+        broker.resume();
+
+        List<String> types = broker.awaitTypes(34, 5, TimeUnit.SECONDS);
+        Assert.assertEquals(34, types.size());
+        Assert.assertEquals("DEBUG", types.get(0));
+        Assert.assertEquals("ERROR", types.get(1));
+    }
+
+    @Test
+    public void testFlushWaitsForThePublishing() throws Exception {
+        appender = newAppender();
+        appender.activateOptions();
+
+        for (int i = 0; i < 10; i++) {
+            append(Level.INFO, "event " + i);
+        }
+        Assert.assertTrue(appender.flush(5000));
+        Assert.assertEquals(10, broker.awaitTypes(10, 0, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testCloseGivesUpAtTheDeadline() throws Exception {
+        appender = newAppender();
+        appender.setCloseTimeout(200);
+        appender.activateOptions();
+
+        broker.hold();
+        append(Level.DEBUG, "first");
+        Assert.assertTrue(broker.awaitHeld(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            append(Level.DEBUG, "backlog " + i);
+        }
+        Assert.assertFalse(appender.flush(50));
+
+        long started = System.nanoTime();
+        appender.close();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 5000);
+        Assert.assertEquals(5, appender.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseLeavesTheEventsToAWorkerWithinTheDeadline() throws Exception {
+        appender = newAppender();
+        appender.setCloseTimeout(5000);
+        appender.activateOptions();
+
+        broker.hold();
+        append(Level.DEBUG, "first");
+        Assert.assertTrue(broker.awaitHeld(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            append(Level.DEBUG, "backlog " + i);
+        }
+        Thread resumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                broker.resume();
+            }
+        });
+        resumer.start();
+
+        appender.close();
+        resumer.join();
+        Assert.assertEquals(0, appender.getDroppedCount());
+        Assert.assertEquals(6, broker.awaitTypes(6, 0, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testAsyncConnectBuffersTheEvents() throws Exception {
+        appender = newAppender();
+        appender.setAsyncConnect(true);
+        broker.holdConnections();
+
+        long started = System.nanoTime();
+        appender.activateOptions();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+
+        for (int i = 0; i < 3; i++) {
+            append(Level.INFO, "event " + i);
+        }
+        Assert.assertFalse(appender.flush(100));
+        Assert.assertEquals(0, broker.awaitTypes(1, 0, TimeUnit.SECONDS).size());
+
+        broker.resumeConnections();
+        Assert.assertTrue(appender.flush(5000));
+        Assert.assertEquals(3, broker.awaitTypes(3, 0, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testCloseDoesNotWaitForTheConnection() throws Exception {
+        appender = newAppender();
+        appender.setAsyncConnect(true);
+        appender.setCloseTimeout(3000);
+        broker.holdConnections();
+        appender.activateOptions();
+
+        for (int i = 0; i < 3; i++) {
+            append(Level.INFO, "event " + i);
+        }
+
+        long started = System.nanoTime();
+        appender.close();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+        Assert.assertEquals(3, appender.getDroppedCount());
+        Assert.assertEquals(0, broker.awaitTypes(1, 0, TimeUnit.SECONDS).size());
+    }
+
+    private RabbitMQAppender newAppender() {
+        RabbitMQAppender _appender = new RabbitMQAppender() {
+            @Override
+            protected Connection newConnection() throws IOException {
+                return broker.newConnection();
+            }
+        };
+        _appender.setName("test");
+        _appender.setLayout(new LogstashLayout());
+        _appender.setJmxEnabled(false);
+        return _appender;
+    }
+
+    private static StringMatchFilter newStringMatchFilter(String text, boolean acceptOnMatch) {
+        StringMatchFilter filter = new StringMatchFilter();
+        filter.setStringToMatch(text);
+        filter.setAcceptOnMatch(acceptOnMatch);
+        return filter;
+    }
+
+    /**
+     * Appends the given number of events from each of the threads, to the
+     *  given logger or to the default one
+     */
+    private void appendFromThreads(int threads, final Logger logger, final int events) throws InterruptedException {
+        Thread[] appenders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            appenders[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; i++) {
+                        appender.doAppend(new LoggingEvent(Logger.class.getName(), (logger != null) ? logger : LOG,
+                                Level.INFO, String.valueOf(i), null));
+                    }
+                }
+            }, "appender-" + t);
+            appenders[t].start();
+        }
+        for (Thread thread : appenders) {
+            thread.join();
+        }
+    }
+
+    private void append(Level level, String message) {
+        append(LOG, level, message);
+    }
+
+    private void append(Logger logger, Level level, String message) {
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, level, message, null));
+    }
+
+    /**
+     * Reads the records of a frame: their count, then each of them preceded
+     *  by its length, as big-endian ints
+     */
+    private static List<String> unframe(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        List<String> records = new ArrayList<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            records.add(new String(record, StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(0, in.available());
+        return records;
+    }
+
+    /**
+     * In-memory stand-in of the broker which records the published messages
+     *  and can hold the publishers inside basicPublish
+     */
+    static class StubBroker {
+        private final List<Message> published = new ArrayList<>();
+        private final List<String> bindings = new ArrayList<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile CountDownLatch gate = null;
+        private final CountDownLatch held = new CountDownLatch(1);
+        private volatile CountDownLatch connectGate = null;
+
+        Connection newConnection() throws IOException {
+            final CountDownLatch _connectGate = connectGate;
+            if (_connectGate != null) {
+                try {
+                    _connectGate.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ie);
+                }
+            }
+            connections.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handler(true));
+        }
+
+        void holdConnections() {
+            connectGate = new CountDownLatch(1);
+        }
+
+        void resumeConnections() {
+            final CountDownLatch _connectGate = connectGate;
+            if (_connectGate != null) {
+                _connectGate.countDown();
+            }
+        }
+
+        void hold() {
+            gate = new CountDownLatch(1);
+        }
+
+        boolean awaitHeld(long timeout, TimeUnit unit) throws InterruptedException {
+            return held.await(timeout, unit);
+        }
+
+        void resume() {
+            final CountDownLatch _gate = gate;
+            if (_gate != null) {
+                _gate.countDown();
+            }
+        }
+
+        int getConnectionCount() {
+            return connections.get();
+        }
+
+        List<String> getBindings() {
+            synchronized (bindings) {
+                return new ArrayList<>(bindings);
+            }
+        }
+
+        List<Message> awaitMessages(int count, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (published) {
+                while (published.size() < count && System.nanoTime() < deadline) {
+                    published.wait(10);
+                }
+                return new ArrayList<>(published);
+            }
+        }
+
+        List<String> awaitTypes(int count, long timeout, TimeUnit unit) throws InterruptedException {
+            List<String> types = new ArrayList<>();
+            for (Message message : awaitMessages(count, timeout, unit)) {
+                types.add(message.properties.getType());
+            }
+            return types;
+        }
+
+        List<String> awaitBodies(int count, long timeout, TimeUnit unit) throws InterruptedException {
+            List<String> bodies = new ArrayList<>();
+            for (Message message : awaitMessages(count, timeout, unit)) {
+                bodies.add(new String(message.body, StandardCharsets.UTF_8));
+            }
+            return bodies;
+        }
+
+        private void publish(Object[] args) throws IOException {
+            final CountDownLatch _gate = gate;
+            if (_gate != null) {
+                held.countDown();
+                try {
+                    _gate.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ie);
+                }
+            }
+            final Message message = new Message((String) args[1], (AMQP.BasicProperties) args[args.length - 2],
+                    (byte[]) args[args.length - 1], Thread.currentThread().getName());
+            synchronized (published) {
+                published.add(message);
+                published.notifyAll();
+            }
+        }
+
+        private Channel newChannel() {
+            return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                    new Class<?>[] { Channel.class }, new Handler(false));
+        }
+
+        private class Handler implements InvocationHandler {
+            private final boolean connection;
+
+            Handler(boolean connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "createChannel":
+                        return newChannel();
+                    case "isOpen":
+                        return true;
+                    case "basicPublish":
+                        publish(args);
+                        return null;
+                    case "queueBind":
+                        synchronized (bindings) {
+                            bindings.add((String) args[2]);
+                        }
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return connection ? "StubConnection" : "StubChannel";
+                    default:
+                        Class<?> type = method.getReturnType();
+                        if (type == boolean.class) {
+                            return false;
+                        }
+                        if (type == int.class) {
+                            return 0;
+                        }
+                        if (type == long.class) {
+                            return 0L;
+                        }
+                        return null;
+                }
+            }
+        }
+
+        static class Message {
+            final String routingKey;
+            final AMQP.BasicProperties properties;
+            final byte[] body;
+            final String worker;
+
+            Message(String routingKey, AMQP.BasicProperties properties, byte[] body, String worker) {
+                this.routingKey = routingKey;
+                this.properties = properties;
+                this.body = body;
+                this.worker = worker;
+            }
+        }
+    }
+}
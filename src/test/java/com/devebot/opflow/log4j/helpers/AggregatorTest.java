@@ -0,0 +1,56 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AggregatorTest {
+
+    private static final Logger LOG = Logger.getLogger(AggregatorTest.class);
+
+    private static EventSnapshot snapshot(long time, Level level, String message, Throwable t) {
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), LOG, time, level, message, t);
+        return new EventSnapshot().capture(event, false);
+    }
+
+    @Test
+    public void testRepeatsAreFoldedIntoOneSummary() {
+        final List<EventSnapshot> summaries = new ArrayList<>();
+        Aggregator aggregator = new Aggregator(16, 1000, new Aggregator.Sink() {
+            @Override
+            public void publish(EventSnapshot summary) {
+                summaries.add(summary);
+            }
+        });
+        Assert.assertFalse(aggregator.fold(snapshot(1000, Level.ERROR, "down", new IllegalStateException("a"))));
+        for (int i = 1; i <= 50; i++) {
+            Assert.assertTrue(aggregator.fold(snapshot(1000 + i, Level.ERROR, "down", new IllegalStateException("b"))));
+        }
+        Assert.assertFalse(aggregator.fold(snapshot(1010, Level.WARN, "down", null)));
+        Assert.assertFalse(aggregator.fold(snapshot(1010, Level.ERROR, "down", new RuntimeException())));
+        Assert.assertFalse(aggregator.fold(snapshot(1010, Level.ERROR, "other", null)));
+
+        aggregator.sweep(1500);
+        Assert.assertTrue(summaries.isEmpty());
+        aggregator.sweep(2000);
+        Assert.assertEquals(1, summaries.size());
+        EventSnapshot summary = summaries.get(0);
+        Assert.assertEquals(50, summary.getRepeatCount());
+        Assert.assertEquals(1000, summary.getFirstSeen());
+        Assert.assertEquals(1050, summary.getLastSeen());
+        Assert.assertEquals(1050, summary.getTimeStamp());
+        Assert.assertEquals("down", summary.getMessage());
+
+        Assert.assertFalse(aggregator.fold(snapshot(3000, Level.ERROR, "down", new IllegalStateException("c"))));
+        Assert.assertTrue(aggregator.fold(snapshot(3001, Level.ERROR, "down", new IllegalStateException("d"))));
+        Assert.assertFalse(aggregator.fold(snapshot(4500, Level.ERROR, "down", new IllegalStateException("e"))));
+        Assert.assertEquals(2, summaries.size());
+        Assert.assertEquals(1, summaries.get(1).getRepeatCount());
+        aggregator.flushAll();
+        Assert.assertEquals(2, summaries.size());
+    }
+}
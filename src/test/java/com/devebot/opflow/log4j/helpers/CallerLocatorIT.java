@@ -0,0 +1,52 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.net.URL;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs against the packaged multi-release jar, from which a Java 9+ runtime
+ *  loads the StackWalker version of the locator
+ */
+public class CallerLocatorIT {
+
+    @Test
+    public void testJava9VersionIsLoadedFromTheJar() throws Exception {
+        URL source = CallerLocator.class.getProtectionDomain().getCodeSource().getLocation();
+        Assert.assertTrue(source.toString(), source.getPath().endsWith(".jar"));
+        Assert.assertEquals("java.lang.StackWalker", CallerLocator.class.getDeclaredField("WALKER").getType().getName());
+    }
+
+    @Test
+    public void testJava9VersionLocatesTheCaller() {
+        final LocationInfo[] located = new LocationInfo[1];
+        Logger logger = Logger.getLogger(CallerLocatorIT.class.getName() + ".location");
+        logger.setAdditivity(false);
+        logger.addAppender(new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                located[0] = CallerLocator.locate(event);
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        int line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        logger.info("located");
+        LocationInfo li = located[0];
+        Assert.assertEquals(CallerLocatorIT.class.getName(), li.getClassName());
+        Assert.assertEquals("testJava9VersionLocatesTheCaller", li.getMethodName());
+        Assert.assertEquals(String.valueOf(line), li.getLineNumber());
+        Assert.assertEquals("CallerLocatorIT.java", li.getFileName());
+    }
+}
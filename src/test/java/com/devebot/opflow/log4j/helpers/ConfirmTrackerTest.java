@@ -0,0 +1,58 @@
+package com.devebot.opflow.log4j.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfirmTrackerTest {
+
+    private static Envelope envelope(String body) {
+        return new Envelope("", null, body.getBytes());
+    }
+
+    @Test
+    public void testMultipleAckSettlesTheRange() throws Exception {
+        ConfirmTracker tracker = new ConfirmTracker(8, 3);
+        for (long seqNo = 1; seqNo <= 5; seqNo++) {
+            tracker.register(seqNo, envelope("m" + seqNo), 100);
+        }
+        Assert.assertEquals(5, tracker.getInFlight());
+        tracker.handleAck(2, false);
+        Assert.assertEquals(5, tracker.getInFlight());
+        tracker.handleAck(3, true);
+        Assert.assertEquals(2, tracker.getInFlight());
+        tracker.handleAck(5, true);
+        Assert.assertEquals(0, tracker.getInFlight());
+        Assert.assertEquals(5, tracker.getConfirmedCount());
+        Assert.assertTrue(tracker.awaitConfirms(10));
+    }
+
+    @Test
+    public void testNackedAndOrphanedMessagesAreRetried() throws Exception {
+        AppenderMetrics metrics = new AppenderMetrics(null);
+        ConfirmTracker tracker = new ConfirmTracker(8, 1, metrics);
+        Envelope first = envelope("first");
+        Envelope second = envelope("second");
+        tracker.register(1, first, 100);
+        tracker.register(2, second, 100);
+        tracker.handleNack(1, false);
+        Assert.assertSame(first, tracker.pollRetry());
+        Assert.assertNull(tracker.pollRetry());
+        // a new channel starts again from 1
+        tracker.register(1, first, 100);
+        Assert.assertSame(second, tracker.pollRetry());
+        tracker.handleNack(1, false);
+        Assert.assertNull(tracker.pollRetry());
+        Assert.assertEquals(1, tracker.getAbandonedCount());
+        Assert.assertEquals(1, metrics.getDroppedCount());
+    }
+
+    @Test
+    public void testFullWindowTimesOutAndRequeues() throws Exception {
+        ConfirmTracker tracker = new ConfirmTracker(2, 3);
+        tracker.register(1, envelope("a"), 10);
+        tracker.register(2, envelope("b"), 10);
+        tracker.register(3, envelope("c"), 10);
+        Assert.assertEquals(1, tracker.getInFlight());
+        Assert.assertEquals(2, tracker.getRetriedCount());
+    }
+}
@@ -0,0 +1,69 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.rabbitmq.nostro.client.AMQP;
+import java.io.File;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiskSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Envelope envelope(int i) {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties().builder()
+                .type("INFO")
+                .contentType("text/json")
+                .build();
+        return new Envelope("blue", properties, ("{\"seq\":" + i + "}").getBytes());
+    }
+
+    @Test
+    public void testEnvelopesAreReplayedInOrderAcrossSegments() throws Exception {
+        File directory = folder.newFolder("spool");
+        DiskSpool spool = new DiskSpool(directory, 256, 64 * 1024);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(spool.append(envelope(i)));
+        }
+        Assert.assertTrue(directory.listFiles().length > 1);
+        for (int i = 0; i < 50; i++) {
+            Envelope envelope = spool.poll();
+            Assert.assertEquals("blue", envelope.getRoutingKey());
+            Assert.assertEquals("INFO", envelope.getProperties().getType());
+            Assert.assertEquals("{\"seq\":" + i + "}", new String(envelope.getBody()));
+        }
+        Assert.assertNull(spool.poll());
+        Assert.assertTrue(spool.isEmpty());
+        Assert.assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void testDiskCapRejectsEnvelopes() throws Exception {
+        DiskSpool spool = new DiskSpool(folder.newFolder("capped"), 256, 512);
+        int accepted = 0;
+        while (spool.append(envelope(accepted))) {
+            accepted++;
+        }
+        Assert.assertEquals(1, spool.getRejectedCount());
+        Assert.assertEquals(accepted, spool.getSpooledCount());
+        Assert.assertTrue(spool.getDiskUsage() <= 512);
+    }
+
+    @Test
+    public void testSegmentsLeftOverAreReplayedAfterRestart() throws Exception {
+        File directory = folder.newFolder("restart");
+        DiskSpool spool = new DiskSpool(directory, 256, 64 * 1024);
+        for (int i = 0; i < 10; i++) {
+            spool.append(envelope(i));
+        }
+        spool.close();
+        DiskSpool reopened = new DiskSpool(directory, 256, 64 * 1024);
+        reopened.append(envelope(10));
+        for (int i = 0; i <= 10; i++) {
+            Assert.assertEquals("{\"seq\":" + i + "}", new String(reopened.poll().getBody()));
+        }
+        Assert.assertNull(reopened.poll());
+    }
+}
@@ -0,0 +1,74 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.Collections;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventSnapshotTest {
+
+    private static final Logger LOG = Logger.getLogger(EventSnapshotTest.class);
+
+    @Test
+    public void testCaptureOnCallerThread() {
+        Exception error = new IllegalStateException("boom");
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), LOG, Level.WARN, Collections.singletonMap("k", "v"), error);
+        EventSnapshot snapshot = new EventSnapshot().capture(event, false);
+        Assert.assertSame(Level.WARN, snapshot.getLevel());
+        Assert.assertSame(LOG.getName(), snapshot.getLoggerName());
+        Assert.assertEquals(Thread.currentThread().getName(), snapshot.getThreadName());
+        Assert.assertEquals("{k=v}", snapshot.getMessage());
+        Assert.assertSame(error, snapshot.getThrowable());
+        Assert.assertNull(snapshot.getLocationInfo());
+
+        LoggingEvent copy = snapshot.toLoggingEvent();
+        Assert.assertEquals(event.getTimeStamp(), copy.getTimeStamp());
+        Assert.assertEquals("{k=v}", copy.getRenderedMessage());
+        Assert.assertSame(error, copy.getThrowableInformation().getThrowable());
+
+        snapshot.clear();
+        Assert.assertNull(snapshot.getMessage());
+        Assert.assertNull(snapshot.getThrowable());
+    }
+
+    @Test
+    public void testCaptureKeepsScalarMessages() {
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), LOG, Level.INFO, 42, null);
+        EventSnapshot snapshot = new EventSnapshot().capture(event, true);
+        Assert.assertEquals(42, snapshot.getMessage());
+        Assert.assertNotNull(snapshot.getLocationInfo());
+    }
+
+    @Test
+    public void testCaptureLocatesTheCaller() {
+        final EventSnapshot snapshot = new EventSnapshot();
+        Logger logger = Logger.getLogger(EventSnapshotTest.class.getName() + ".location");
+        logger.setAdditivity(false);
+        logger.addAppender(new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                snapshot.capture(event, true);
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        int line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        logger.info("located");
+        LocationInfo li = snapshot.getLocationInfo();
+        Assert.assertEquals(EventSnapshotTest.class.getName(), li.getClassName());
+        Assert.assertEquals("testCaptureLocatesTheCaller", li.getMethodName());
+        Assert.assertEquals(String.valueOf(line), li.getLineNumber());
+        Assert.assertEquals("EventSnapshotTest.java", li.getFileName());
+    }
+}
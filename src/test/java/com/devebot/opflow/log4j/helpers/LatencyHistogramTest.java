@@ -0,0 +1,79 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguousAndCoverTheirValues() {
+        long previous = -1;
+        for (long value = 0; value < (1L << 20); value++) {
+            int index = LatencyHistogram.indexOf(value);
+            Assert.assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            if (index > 0) {
+                Assert.assertTrue(value > LatencyHistogram.highestValueOf(index - 1));
+            }
+            Assert.assertTrue(index == previous || index == previous + 1);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testPercentilesStayWithinTheRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram(1);
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(100000, snapshot.getCount());
+        Assert.assertEquals(100000L * 1000, snapshot.getMax());
+        Assert.assertEquals(50000500.0, snapshot.getMean(), 1.0);
+        assertNear(50000L * 1000, snapshot.getValueAtPercentile(50));
+        assertNear(99000L * 1000, snapshot.getValueAtPercentile(99));
+        assertNear(99900L * 1000, snapshot.getValueAtPercentile(99.9));
+        Assert.assertEquals(snapshot.getMax(), snapshot.getValueAtPercentile(100));
+        histogram.reset();
+        Assert.assertEquals(0, histogram.snapshot().getCount());
+        Assert.assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testConcurrentRecordersAreAllCounted() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram(4);
+        final StripedCounter counter = new StripedCounter(4);
+        final int threads = 8;
+        final int perThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(i);
+                        counter.increment();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertEquals((long) threads * perThread, histogram.snapshot().getCount());
+        Assert.assertEquals(perThread - 1, histogram.snapshot().getMax());
+        Assert.assertEquals((long) threads * perThread, counter.sum());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(actual + " is not near " + expected, Math.abs(actual - expected) <= expected / 16);
+    }
+}
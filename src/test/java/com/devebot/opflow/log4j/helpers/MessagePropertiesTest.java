@@ -0,0 +1,42 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.rabbitmq.nostro.client.AMQP;
+import org.apache.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessagePropertiesTest {
+
+    @Test
+    public void testTemplatesAreSharedWithoutCorrelationIds() {
+        MessageProperties properties = new MessageProperties("app", "text/json", "application/vnd.opflow.batch", "gzip", 60000, false);
+        AMQP.BasicProperties error = properties.get(Level.ERROR, false, false);
+        Assert.assertSame(error, properties.get(Level.ERROR, false, false));
+        Assert.assertEquals("app", error.getAppId());
+        Assert.assertEquals("ERROR", error.getType());
+        Assert.assertEquals("text/json", error.getContentType());
+        Assert.assertNull(error.getContentEncoding());
+        Assert.assertNull(error.getCorrelationId());
+        Assert.assertEquals("60000", error.getExpiration());
+
+        AMQP.BasicProperties framed = properties.get(Level.WARN, true, true);
+        Assert.assertEquals("WARN", framed.getType());
+        Assert.assertEquals("application/vnd.opflow.batch", framed.getContentType());
+        Assert.assertEquals("gzip", framed.getContentEncoding());
+    }
+
+    @Test
+    public void testCorrelationIdsAreDistinct() {
+        MessageProperties properties = new MessageProperties("app", "text/json", "application/vnd.opflow.batch", null, 0, true);
+        AMQP.BasicProperties first = properties.get(Level.INFO, false, false);
+        AMQP.BasicProperties second = properties.get(Level.INFO, false, false);
+        Assert.assertTrue(first.getCorrelationId().startsWith("app:"));
+        Assert.assertNotEquals(first.getCorrelationId(), second.getCorrelationId());
+        Assert.assertEquals("INFO", second.getType());
+        Assert.assertNull(second.getExpiration());
+
+        AMQP.BasicProperties custom = properties.get(Level.ALL, false, false);
+        Assert.assertEquals("ALL", custom.getType());
+        Assert.assertNotNull(custom.getCorrelationId());
+    }
+}
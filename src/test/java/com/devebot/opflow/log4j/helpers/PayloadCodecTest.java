@@ -0,0 +1,69 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PayloadCodecTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testRoundTripOfEachCodec() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("{\"level\":\"ERROR\",\"stackTrace\":[\"at com.example.Service.call(Service.java:").append(i).append(")\"]}\n");
+        }
+        Random random = new Random(7);
+        byte[] noise = new byte[5000];
+        random.nextBytes(noise);
+        byte[][] samples = { new byte[0], "tiny".getBytes(UTF_8), "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes(UTF_8),
+            text.toString().getBytes(UTF_8), noise };
+        String[][] codecs = { { "gzip", "gzip" }, { "deflate", "deflate" }, { "lz4", "x-lz4-block" } };
+        for (String[] names : codecs) {
+            String name = names[0];
+            PayloadCodec codec = PayloadCodec.forName(name);
+            Assert.assertEquals(names[1], codec.getEncoding());
+            BytesBuilder out = new BytesBuilder();
+            for (byte[] sample : samples) {
+                out.reset();
+                out.write(new byte[] { 1, 2, 3 });
+                codec.compress(sample, 0, sample.length, out);
+                Assert.assertArrayEquals(name, sample, codec.decompress(out.toByteArray(3)));
+            }
+            byte[] json = samples[3];
+            out.reset();
+            codec.compress(json, 0, json.length, out);
+            Assert.assertTrue(name + " should shrink repetitive JSON", out.size() < json.length / 4);
+            codec.close();
+        }
+    }
+
+    @Test
+    public void testLz4RejectsACorruptedLength() {
+        PayloadCodec codec = PayloadCodec.forName("lz4");
+        byte[][] corrupted = { { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x10, 'a' },
+            { 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x10, 'a' } };
+        for (byte[] body : corrupted) {
+            try {
+                codec.decompress(body);
+                Assert.fail();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    @Test
+    public void testNoneAndUnknownNames() {
+        Assert.assertNull(PayloadCodec.forName(null));
+        Assert.assertNull(PayloadCodec.forName("none"));
+        try {
+            PayloadCodec.forName("zstd");
+            Assert.fail();
+        } catch (IllegalArgumentException iae) {
+        }
+    }
+}
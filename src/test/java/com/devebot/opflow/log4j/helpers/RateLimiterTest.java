@@ -0,0 +1,57 @@
+package com.devebot.opflow.log4j.helpers;
+
+import com.devebot.opflow.log4j.utils.JsonTool;
+import java.util.Map;
+import org.apache.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testTokenBucketAllowsBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(bucket.tryAcquire(now));
+        }
+        Assert.assertFalse(bucket.tryAcquire(now));
+        Assert.assertTrue(bucket.tryAcquire(now + 100L * 1000 * 1000));
+        Assert.assertFalse(bucket.tryAcquire(now + 100L * 1000 * 1000));
+        Assert.assertEquals(2, bucket.drainRejected());
+        Assert.assertEquals(0, bucket.drainRejected());
+    }
+
+    @Test
+    public void testLoggerLimitsFollowTheHierarchy() {
+        RateLimiter limiter = new RateLimiter(JsonTool.toJsonMap("{\"com.example.dao\": 2, \"*\": 1000}"), null, null);
+        int daoPermits = 0;
+        int webPermits = 0;
+        for (int i = 0; i < 100; i++) {
+            if (limiter.permit("com.example.dao.UserDao", Level.INFO)) daoPermits++;
+            if (limiter.permit("com.example.web.Controller", Level.INFO)) webPermits++;
+        }
+        Assert.assertEquals(2, daoPermits);
+        Assert.assertEquals(100, webPermits);
+        Map<String, Long> suppressed = limiter.drainSuppressed();
+        Assert.assertEquals(Long.valueOf(98), suppressed.get("com.example.dao.UserDao"));
+        Assert.assertTrue(limiter.drainSuppressed().isEmpty());
+    }
+
+    @Test
+    public void testLevelLimitsAndSampling() {
+        RateLimiter limiter = new RateLimiter(null, JsonTool.toJsonMap("{\"INFO\": 3}"), JsonTool.toJsonMap("{\"DEBUG\": 0.0, \"TRACE\": 1.0}"));
+        int info = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.permit("a", Level.INFO)) info++;
+            Assert.assertFalse(limiter.permit("b", Level.DEBUG));
+            Assert.assertTrue(limiter.permit("c", Level.TRACE));
+            Assert.assertTrue(limiter.permit("d", Level.ERROR));
+        }
+        Assert.assertEquals(3, info);
+        Map<String, Long> suppressed = limiter.drainSuppressed();
+        Assert.assertEquals(Long.valueOf(10), suppressed.get("sampled"));
+        Assert.assertEquals(Long.valueOf(7), suppressed.get("INFO"));
+        Assert.assertTrue(new RateLimiter(null, null, null).isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package com.devebot.opflow.log4j.helpers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingBufferTest {
+
+    @Test
+    public void testCapacityIsRoundedAndBounded() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(5);
+        Assert.assertEquals(8, buffer.capacity());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(8));
+        Assert.assertEquals(8, buffer.size());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        Assert.assertNull(buffer.poll());
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersDeliverEveryElement() throws Exception {
+        final RingBuffer<Long> buffer = new RingBuffer<>(64);
+        final int producers = 4;
+        final int perProducer = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 1; i <= perProducer; i++) {
+                        while (!buffer.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+        AtomicLong sum = new AtomicLong();
+        int received = 0;
+        while (received < producers * perProducer) {
+            Long item = buffer.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            sum.addAndGet(item);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals((long) producers * perProducer * (perProducer + 1) / 2, sum.get());
+        Assert.assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,43 @@
+package com.devebot.opflow.log4j.helpers;
+
+import org.apache.log4j.Level;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoutingPlanTest {
+
+    @Test
+    public void testStaticKeyIsKeptAsIs() {
+        RoutingPlan plan = RoutingPlan.compile("blue", "app");
+        Assert.assertTrue(plan.isStatic());
+        Assert.assertEquals("blue", plan.resolve("com.example", Level.INFO));
+        Assert.assertEquals("", RoutingPlan.compile(null, "app").resolve("com.example", Level.INFO));
+        Assert.assertEquals("logs.app", RoutingPlan.compile("logs.${identifier}", "app").resolve(null, null));
+    }
+
+    @Test
+    public void testVariablesAreResolvedAndCached() {
+        RoutingPlan plan = RoutingPlan.compile("${level}.${logger}.${identifier}", "app");
+        Assert.assertFalse(plan.isStatic());
+        String key = plan.resolve("com.example.dao", Level.ERROR);
+        Assert.assertEquals("ERROR.com.example.dao.app", key);
+        Assert.assertSame(key, plan.resolve("com.example.dao", Level.ERROR));
+        Assert.assertEquals("INFO.com.example.dao.app", plan.resolve("com.example.dao", Level.INFO));
+        Assert.assertEquals("WARN.other.app", plan.resolve("other", Level.WARN));
+
+        RoutingPlan byLevel = RoutingPlan.compile("log.${level}", null);
+        Assert.assertSame(byLevel.resolve("a", Level.DEBUG), byLevel.resolve("b", Level.DEBUG));
+        Assert.assertEquals("log.DEBUG", byLevel.resolve("a", Level.DEBUG));
+        Assert.assertEquals("log.ALL", byLevel.resolve("a", Level.ALL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVariableIsRejected() {
+        RoutingPlan.compile("${level}.${host}", "app");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnclosedVariableIsRejected() {
+        RoutingPlan.compile("${level", "app");
+    }
+}
@@ -0,0 +1,216 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.utils.BytesBuilder;
+import com.devebot.opflow.log4j.utils.JsonTool;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryLayoutTest {
+
+    private static final Logger LOGGER = Logger.getLogger(BinaryLayoutTest.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String METADATA = "{\"lane\":{\"version\":\"0.2.1\",\"instance\":\"01\"},\"lang\":\"java\",\"tags\":[\"c-broker\",1,true],\"message\":\"meta\",\"level\":\"meta\"}";
+
+    @Test
+    public void testMessagePackCarriesTheLogstashFields() {
+        MessagePackLayout layout = new MessagePackLayout();
+        Assert.assertEquals("application/msgpack", layout.getContentType());
+        assertSameFields(layout, new MessagePackDecoder());
+    }
+
+    @Test
+    public void testCborCarriesTheLogstashFields() {
+        CborLayout layout = new CborLayout();
+        Assert.assertEquals("application/cbor", layout.getContentType());
+        assertSameFields(layout, new CborDecoder());
+    }
+
+    private static void assertSameFields(LogstashLayout layout, Decoder decoder) {
+        LogstashLayout reference = new LogstashLayout();
+        for (LogstashLayout l : new LogstashLayout[] { layout, reference }) {
+            l.setDepth(3);
+            l.setMaxCauseDepth(2);
+            l.setMetadata(JsonTool.toJsonMap(METADATA));
+        }
+        Exception error = new IllegalStateException("outer", new RuntimeException("inner é中"));
+        String message = "short";
+        for (int i = 0; i < 40; i++) {
+            message += " and a longer message 😀";
+        }
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), LOGGER, 1571234567890L, Level.ERROR, message, error);
+
+        BytesBuilder out = new BytesBuilder();
+        layout.format(event, out);
+        Map<?, ?> decoded = (Map<?, ?>) normalize(decoder.decode(out.toByteArray()));
+        Assert.assertEquals(decoder.length(), out.size());
+        Map<String, Object> expected = JsonTool.toJsonMap(reference.format(event));
+
+        Assert.assertEquals(36, ((String) decoded.remove("logId")).length());
+        expected.remove("logId");
+        Assert.assertEquals(expected, decoded);
+        byte[] bytes = layout.format(event).getBytes(Charset.forName("ISO-8859-1"));
+        Assert.assertEquals(message, ((Map<?, ?>) decoder.decode(bytes)).get("message"));
+    }
+
+    /**
+     * Numbers become doubles, as Gson parses them
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Long) {
+            return ((Long) value).doubleValue();
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(entry.getKey(), normalize(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(normalize(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    private abstract static class Decoder {
+        byte[] buf;
+        int pos;
+
+        Object decode(byte[] bytes) {
+            buf = bytes;
+            pos = 0;
+            return next();
+        }
+
+        int length() {
+            return pos;
+        }
+
+        abstract Object next();
+
+        int u8() {
+            return buf[pos++] & 0xff;
+        }
+
+        long uint(int bytes) {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | u8();
+            }
+            return value;
+        }
+
+        String text(int length) {
+            String value = new String(buf, pos, length, UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+
+    private static class MessagePackDecoder extends Decoder {
+        @Override
+        Object next() {
+            int b = u8();
+            if (b <= 0x7f) return (long) b;
+            if (b >= 0xe0) return (long) (byte) b;
+            if ((b & 0xe0) == 0xa0) return text(b & 0x1f);
+            switch (b) {
+                case 0xc0: return null;
+                case 0xc2: return false;
+                case 0xc3: return true;
+                case 0xcb: return Double.longBitsToDouble(uint(8));
+                case 0xcc: return uint(1);
+                case 0xcd: return uint(2);
+                case 0xce: return uint(4);
+                case 0xcf: return uint(8);
+                case 0xd0: return (long) (byte) uint(1);
+                case 0xd1: return (long) (short) uint(2);
+                case 0xd2: return (long) (int) uint(4);
+                case 0xd3: return uint(8);
+                case 0xd9: return text((int) uint(1));
+                case 0xda: return text((int) uint(2));
+                case 0xdb: return text((int) uint(4));
+                case 0xdd: {
+                    long count = uint(4);
+                    List<Object> list = new ArrayList<>();
+                    for (long i = 0; i < count; i++) {
+                        list.add(next());
+                    }
+                    return list;
+                }
+                case 0xdf: {
+                    long count = uint(4);
+                    Map<Object, Object> map = new LinkedHashMap<>();
+                    for (long i = 0; i < count; i++) {
+                        Object key = next();
+                        Assert.assertFalse("duplicate key " + key, map.containsKey(key));
+                        map.put(key, next());
+                    }
+                    return map;
+                }
+                default:
+                    throw new IllegalStateException("Unexpected byte " + Integer.toHexString(b));
+            }
+        }
+    }
+
+    private static class CborDecoder extends Decoder {
+        private static final Object BREAK = new Object();
+
+        @Override
+        Object next() {
+            int b = u8();
+            int major = b >>> 5;
+            int info = b & 0x1f;
+            switch (major) {
+                case 0: return argument(info);
+                case 1: return -1 - argument(info);
+                case 3: return text((int) argument(info));
+                case 4: {
+                    Assert.assertEquals(31, info);
+                    List<Object> list = new ArrayList<>();
+                    for (Object item = next(); item != BREAK; item = next()) {
+                        list.add(item);
+                    }
+                    return list;
+                }
+                case 5: {
+                    Assert.assertEquals(31, info);
+                    Map<Object, Object> map = new LinkedHashMap<>();
+                    for (Object key = next(); key != BREAK; key = next()) {
+                        Assert.assertFalse("duplicate key " + key, map.containsKey(key));
+                        map.put(key, next());
+                    }
+                    return map;
+                }
+                case 7:
+                    switch (b) {
+                        case 0xf4: return false;
+                        case 0xf5: return true;
+                        case 0xf6: return null;
+                        case 0xfb: return Double.longBitsToDouble(uint(8));
+                        case 0xff: return BREAK;
+                    }
+                default:
+                    throw new IllegalStateException("Unexpected byte " + Integer.toHexString(b));
+            }
+        }
+
+        private long argument(int info) {
+            if (info < 24) return info;
+            return uint(1 << (info - 24));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.devebot.opflow.log4j.layouts;
+
+import com.devebot.opflow.log4j.utils.JsonTool;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogstashLayoutTest {
+
+    private static final Logger LOGGER = Logger.getLogger(LogstashLayoutTest.class);
+
+    private static LoggingEvent newEvent(Object message, Throwable t) {
+        return new LoggingEvent(Logger.class.getName(), LOGGER, 1571234567890L, Level.ERROR, message, t);
+    }
+
+    @Test
+    public void testFieldsAreEncodedAsValidJson() {
+        LogstashLayout layout = new LogstashLayout();
+        layout.setDepth(1);
+        layout.setMetadata(JsonTool.toJsonMap("{\"lane\":{\"version\":\"0.2.1\"},\"lang\":\"java\",\"tags\":[\"c-broker\"]}"));
+        String message = "quote \" backslash \\ newline \n tab \t unicode é中 😀 ctrl \u0001";
+
+        Map<String, Object> json = JsonTool.toJsonMap(layout.format(newEvent(message, null)));
+
+        Assert.assertEquals(message, json.get("message"));
+        Assert.assertEquals("ERROR", json.get("level"));
+        Assert.assertEquals(1571234567890.0, json.get("logTime"));
+        Assert.assertEquals("2019-10-16T14:02:47.890Z", json.get("timestamp"));
+        Assert.assertEquals(LogstashLayoutTest.class.getName(), json.get("loggerName"));
+        Assert.assertEquals(36, ((String) json.get("logId")).length());
+        Assert.assertEquals("java", json.get("lang"));
+        Assert.assertEquals("0.2.1", ((Map) json.get("lane")).get("version"));
+        Assert.assertEquals("c-broker", ((List) json.get("tags")).get(0));
+    }
+
+    @Test
+    public void testTimeOrderedLogIds() {
+        LogstashLayout layout = new LogstashLayout();
+        layout.setLogIdGenerator("uuid7");
+        String previous = "";
+        for (int i = 0; i < 1000; i++) {
+            String logId = (String) JsonTool.toJsonMap(layout.format(newEvent("id", null))).get("logId");
+            UUID uuid = UUID.fromString(logId);
+            Assert.assertEquals(7, uuid.version());
+            Assert.assertEquals(2, uuid.variant());
+            Assert.assertTrue(logId.compareTo(previous) > 0);
+            previous = logId;
+        }
+    }
+
+    @Test
+    public void testMetadataIsRecompiledWhenReconfigured() {
+        SimpleJsonLayout layout = new SimpleJsonLayout();
+        layout.setMetadata(JsonTool.toJsonMap("{\"lang\":\"java\"}"));
+        Assert.assertEquals("java", JsonTool.toJsonMap(layout.format(newEvent("a", null))).get("lang"));
+        layout.setMetadata(JsonTool.toJsonMap("{\"stack\":\"demo\"}"));
+        Map<String, Object> json = JsonTool.toJsonMap(layout.format(newEvent("b", null)));
+        Assert.assertNull(json.get("lang"));
+        Assert.assertEquals("demo", json.get("stack"));
+        layout.setMetadata(null);
+        Assert.assertTrue(layout.format(newEvent("c", null)).endsWith("\"}"));
+    }
+
+    @Test
+    public void testMetadataCannotTakeOverTheEventFields() {
+        LogstashLayout layout = new LogstashLayout();
+        layout.setMetadata(JsonTool.toJsonMap("{\"message\":\"meta\",\"level\":\"meta\",\"threadName\":\"meta\",\"lang\":\"java\"}"));
+
+        String payload = layout.format(newEvent("event", null));
+        Assert.assertEquals(payload.indexOf("\"message\""), payload.lastIndexOf("\"message\""));
+        Assert.assertEquals(payload.indexOf("\"level\""), payload.lastIndexOf("\"level\""));
+        Map<String, Object> json = JsonTool.toJsonMap(payload);
+        Assert.assertEquals("event", json.get("message"));
+        Assert.assertEquals("ERROR", json.get("level"));
+        Assert.assertEquals("java", json.get("lang"));
+        // not a field of the event below depth 1
+        Assert.assertEquals("meta", json.get("threadName"));
+
+        layout.setDepth(1);
+        json = JsonTool.toJsonMap(layout.format(newEvent("event", null)));
+        Assert.assertEquals(Thread.currentThread().getName(), json.get("threadName"));
+    }
+
+    @Test
+    public void testNonFiniteNumbersAreWrittenAsNull() {
+        // a null field is left out, a null item is kept
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("floatNaN", Float.NaN);
+        metadata.put("floatInfinity", Float.POSITIVE_INFINITY);
+        metadata.put("doubleInfinity", Double.NEGATIVE_INFINITY);
+        metadata.put("ratio", 0.5f);
+        metadata.put("samples", Arrays.asList(Float.NaN, 1.5f));
+        SimpleJsonLayout layout = new SimpleJsonLayout();
+        layout.setMetadata(metadata);
+
+        String payload = layout.format(newEvent("numbers", null));
+        Assert.assertTrue(payload, payload.endsWith("\"threadName\":\"" + Thread.currentThread().getName() + "\",\"ratio\":0.5,\"samples\":[null,1.5]}"));
+    }
+
+    @Test
+    public void testThrowableIsRendered() {
+        LogstashLayout layout = new LogstashLayout();
+        Exception error = new IllegalStateException("broken");
+
+        Map<String, Object> json = JsonTool.toJsonMap(layout.format(newEvent("failure", error)));
+
+        Map throwable = (Map) json.get("throwable");
+        Assert.assertEquals("broken", throwable.get("message"));
+        Assert.assertEquals("java.lang.IllegalStateException", throwable.get("className"));
+        List stackTrace = (List) json.get("stackTrace");
+        Assert.assertEquals(error.getStackTrace().length, stackTrace.size());
+        Assert.assertEquals(getClass().getName(), ((Map) stackTrace.get(0)).get("class"));
+    }
+
+    @Test
+    public void testCausesAreRenderedWithFrameLimits() {
+        LogstashLayout layout = new LogstashLayout();
+        layout.setMaxStackFrames(2);
+        layout.setMaxCauseDepth(3);
+        layout.setMaxCauseFrames(1);
+        Exception root = new IllegalArgumentException("root");
+        Exception error = new IllegalStateException("wrapper", root);
+        error.addSuppressed(new UnsupportedOperationException("suppressed"));
+
+        Map<String, Object> json = JsonTool.toJsonMap(layout.format(newEvent("failure", error)));
+
+        Assert.assertEquals(2, ((List) json.get("stackTrace")).size());
+        Map throwable = (Map) json.get("throwable");
+        Assert.assertEquals((double) (error.getStackTrace().length - 2), throwable.get("omittedFrames"));
+        Assert.assertEquals(16, ((String) throwable.get("fingerprint")).length());
+        Map cause = (Map) ((List) json.get("causes")).get(0);
+        Assert.assertEquals("root", cause.get("message"));
+        Assert.assertEquals(1, ((List) cause.get("stackTrace")).size());
+        Map suppressed = (Map) ((List) json.get("suppressed")).get(0);
+        Assert.assertEquals("java.lang.UnsupportedOperationException", suppressed.get("className"));
+    }
+
+    @Test
+    public void testRepeatedThrowablesShareTheirFingerprint() {
+        LogstashLayout layout = new LogstashLayout();
+        layout.setCompactRepeatedThrowables(true);
+        Map<String, Object> first = null;
+        Map<String, Object> second = null;
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> json = JsonTool.toJsonMap(layout.format(newEvent("loop", new IllegalStateException("#" + i))));
+            if (i == 0) first = json; else second = json;
+        }
+        String fingerprint = (String) ((Map) first.get("throwable")).get("fingerprint");
+        Assert.assertEquals(fingerprint, ((Map) second.get("throwable")).get("fingerprint"));
+        Assert.assertEquals("#1", ((Map) second.get("throwable")).get("message"));
+        Assert.assertNotNull(first.get("stackTrace"));
+        Assert.assertNull(second.get("stackTrace"));
+        Assert.assertEquals(Boolean.TRUE, ((Map) second.get("throwable")).get("repeated"));
+    }
+
+    @Test
+    public void testByteArrayMatchesString() throws Exception {
+        SimpleJsonLayout layout = new SimpleJsonLayout();
+        LoggingEvent event = newEvent("héllo", null);
+        Assert.assertEquals(layout.format(event), new String(layout.toByteArray(event), "UTF-8"));
+    }
+}
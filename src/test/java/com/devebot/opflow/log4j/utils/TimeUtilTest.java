@@ -0,0 +1,56 @@
+package com.devebot.opflow.log4j.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimeUtilTest {
+
+    @Test
+    public void testFormatMatchesSimpleDateFormat() {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Random random = new Random(20191016L);
+        long[] fixed = { 0L, -1L, 951782400000L, 951868799999L, 1571234567890L, 4102444799999L };
+        for (long time : fixed) {
+            Assert.assertEquals(reference.format(new Date(time)), TimeUtil.toISO8601UTC(time));
+        }
+        for (int i = 0; i < 10000; i++) {
+            long time = (long) (random.nextDouble() * 4102444800000L);
+            Assert.assertEquals(reference.format(new Date(time)), TimeUtil.toISO8601UTC(time));
+            Assert.assertEquals(reference.format(new Date(time + 1)), TimeUtil.toISO8601UTC(time + 1));
+        }
+    }
+
+    @Test
+    public void testYearsOutOfFourDigitsFallBack() {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // 9999-12-31T23:59:59.999Z, then the years past 9999
+        long[] fixed = { 253402300799999L, 253402300800000L, 300000000000000L };
+        for (long time : fixed) {
+            Assert.assertEquals(reference.format(new Date(time)), TimeUtil.toISO8601UTC(time));
+            BytesBuilder out = new BytesBuilder();
+            TimeUtil.writeISO8601UTC(time, out);
+            Assert.assertEquals(reference.format(new Date(time)), out.toString());
+        }
+        Assert.assertEquals("10000-01-01T00:00:00.000Z", TimeUtil.toISO8601UTC(253402300800000L));
+        // SimpleDateFormat switches to the Julian calendar before 1582, the fast path does not
+        Assert.assertEquals("0000-01-01T00:00:00.000Z", TimeUtil.toISO8601UTC(-62167219200000L));
+        Assert.assertEquals(reference.format(new Date(-62167219200001L)), TimeUtil.toISO8601UTC(-62167219200001L));
+        Assert.assertEquals(reference.format(new Date(Long.MIN_VALUE)), TimeUtil.toISO8601UTC(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testWriteIntoBuffer() {
+        BytesBuilder out = new BytesBuilder();
+        out.write('[');
+        TimeUtil.writeISO8601UTC(1571234567890L, out);
+        out.write(']');
+        Assert.assertEquals("[2019-10-16T14:02:47.890Z]", out.toString());
+        Assert.assertEquals(1571234567890L, TimeUtil.fromISO8601UTC("2019-10-16T14:02:47.890Z").getTime());
+    }
+}